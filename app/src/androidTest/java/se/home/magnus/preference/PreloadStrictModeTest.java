@@ -0,0 +1,207 @@
+package se.home.magnus.preference;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.StrictMode;
+
+import androidx.preference.PreferenceFragmentCompat;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import se.home.magnus.preference.checkbox.CheckBoxPreference;
+import se.home.magnus.preference.seekbar.EnumerationSeekBarPreference;
+import se.home.magnus.preference.seekbar.FloatSeekBarPreference;
+import se.home.magnus.preference.seekbar.TextSeekBarPreference;
+import se.home.magnus.preference.utility.PreferencePreloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests that the preferences of this library never read the disk on the main thread
+ * while their shared preferences are being preloaded (see "PreferencePreloader"), i.e. a screen of
+ * every kind of preference (see "RecyclingTestActivity") is attached and all its rows are bound
+ * while the preload is held back and a thread policy kills the process on any disk read. It also
+ * tests that the preferences are refreshed with their stored (non-default) values once the preload
+ * has finished, and that a value changed while the preload was held back is persisted then.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PreloadStrictModeTest {
+
+    /**
+     * The name of the shared preferences, which aren't used by any other test, i.e. they are never
+     * loaded in this process before they are preloaded.
+     */
+    private static final String SHARED_PREFERENCES_NAME = "preload_strict_mode_test";
+
+    /**
+     * The stored shared preferences, i.e. non-default values of the first check box, float seek
+     * bar, text seek bar and enumeration seek bar preferences (see "RecyclingTestActivity").
+     */
+    private static final String SHARED_PREFERENCES_XML = "<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n"
+            + "<map>\n"
+            + "    <boolean name=\"check_box_0\" value=\"true\" />\n"
+            + "    <float name=\"float_seek_bar_1\" value=\"42.0\" />\n"
+            + "    <float name=\"text_seek_bar_2\" value=\"2.0\" />\n"
+            + "    <string name=\"enumeration_seek_bar_3\">south</string>\n"
+            + "</map>\n";
+
+    /**
+     * The row of the check box preference which is checked while the preload is held back.
+     */
+    private static final int TOGGLED_ROW = RecyclingTestActivity.KIND_COUNT;
+
+    /**
+     * The thread policy of the main thread before the test.
+     */
+    private StrictMode.ThreadPolicy _threadPolicy;
+
+    /**
+     * Stores the shared preferences, holds the preload back, attaches and binds the preference
+     * screen and checks a check box preference with disk reads detected (and punished by death),
+     * and checks that the preload finishes once it is let go, i.e. that the preferences are
+     * refreshed and that the checked state is persisted.
+     *
+     * @throws InterruptedException if the test is interrupted
+     * @throws IOException          if the shared preferences couldn't be stored
+     */
+    @Test
+    public void testBindingWhilePreloading() throws InterruptedException, IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CountDownLatch preloadLatch = new CountDownLatch(1), loadedLatch = new CountDownLatch(1);
+        __storeSharedPreferences(context);
+        // NOTE that the preload is queued behind a task waiting for the latch, i.e. the shared
+        // preferences are being preloaded until the latch is released
+        PreferencePreloader.execute(new Runnable() {
+            /**
+             * Waits until the preload is let go.
+             */
+            @Override
+            public void run() {
+                try {
+                    preloadLatch.await();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        PreferencePreloader.preload(context, SHARED_PREFERENCES_NAME);
+        try (ActivityScenario<RecyclingTestActivity> scenario = ActivityScenario.launch(RecyclingTestActivity.class)) {
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            scenario.onActivity(new ActivityScenario.ActivityAction<RecyclingTestActivity>() {
+                /**
+                 * Detects the disk reads of the main thread and attaches the preference screen
+                 * persisted in the shared preferences being preloaded.
+                 *
+                 * @param activity the activity hosting the preference fragment
+                 */
+                @Override
+                public void perform(RecyclingTestActivity activity) {
+                    _threadPolicy = StrictMode.getThreadPolicy();
+                    StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder().detectDiskReads().penaltyDeath().build());
+                    activity.getSupportFragmentManager().beginTransaction().replace(android.R.id.content, RecyclingTestActivity.RecyclingTestFragment.newInstance(SHARED_PREFERENCES_NAME)).commitNow();
+                }
+            });
+            // NOTE that the first rows are bound by the layout pass
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            scenario.onActivity(new ActivityScenario.ActivityAction<RecyclingTestActivity>() {
+                /**
+                 * Binds all the rows by scrolling the list of the preference fragment to its end,
+                 * checks a check box preference (whose default checked state is unchecked) and
+                 * stops detecting the disk reads of the main thread.
+                 *
+                 * @param activity the activity hosting the preference fragment
+                 */
+                @Override
+                public void perform(RecyclingTestActivity activity) {
+                    PreferenceFragmentCompat fragment = (PreferenceFragmentCompat) activity.getSupportFragmentManager().findFragmentById(android.R.id.content);
+                    RecyclerView listView = fragment.getListView();
+                    try {
+                        assertTrue("the shared preferences must be being preloaded", PreferencePreloader.isLoading(fragment.getPreferenceManager()));
+                        while (listView.canScrollVertically(1)) {
+                            listView.scrollBy(0, listView.getHeight() / 3);
+                        }
+                        // NOTE that the stored values aren't read yet, i.e. the preferences still
+                        // have their default values
+                        assertFalse(((CheckBoxPreference) fragment.findPreference(RecyclingTestActivity.getKey(0))).isChecked());
+                        ((CheckBoxPreference) fragment.findPreference(RecyclingTestActivity.getKey(TOGGLED_ROW))).setChecked(true);
+                    } finally {
+                        StrictMode.setThreadPolicy(_threadPolicy);
+                    }
+                }
+            });
+            preloadLatch.countDown();
+            // NOTE that the preload has notified the preferences when a task queued behind it has
+            // run, i.e. they are refreshed when the main thread is idle
+            PreferencePreloader.execute(new Runnable() {
+                /**
+                 * Tells that the preload has finished.
+                 */
+                @Override
+                public void run() {
+                    loadedLatch.countDown();
+                }
+            });
+            loadedLatch.await();
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            scenario.onActivity(new ActivityScenario.ActivityAction<RecyclingTestActivity>() {
+                /**
+                 * Checks that the shared preferences are loaded, that the preferences are
+                 * refreshed with the stored values and that the checked state changed while the
+                 * preload was held back is persisted.
+                 *
+                 * @param activity the activity hosting the preference fragment
+                 */
+                @Override
+                public void perform(RecyclingTestActivity activity) {
+                    PreferenceFragmentCompat fragment = (PreferenceFragmentCompat) activity.getSupportFragmentManager().findFragmentById(android.R.id.content);
+                    SharedPreferences sharedPreferences = fragment.getPreferenceManager().getSharedPreferences();
+                    assertFalse(PreferencePreloader.isLoading(fragment.getPreferenceManager()));
+                    assertTrue(((CheckBoxPreference) fragment.findPreference(RecyclingTestActivity.getKey(0))).isChecked());
+                    assertEquals(42f, ((FloatSeekBarPreference) fragment.findPreference(RecyclingTestActivity.getKey(1))).getValue(), 0);
+                    assertEquals(2f, ((TextSeekBarPreference) fragment.findPreference(RecyclingTestActivity.getKey(2))).getValue(), 0);
+                    assertEquals("south", ((EnumerationSeekBarPreference) fragment.findPreference(RecyclingTestActivity.getKey(3))).getValue());
+                    assertTrue(((CheckBoxPreference) fragment.findPreference(RecyclingTestActivity.getKey(TOGGLED_ROW))).isChecked());
+                    assertTrue(sharedPreferences.getBoolean(RecyclingTestActivity.getKey(TOGGLED_ROW), false));
+                    assertTrue(sharedPreferences.getBoolean(RecyclingTestActivity.getKey(0), false));
+                }
+            });
+        } finally {
+            preloadLatch.countDown();
+        }
+    }
+
+    /**
+     * Stores the shared preferences as their XML file (and removes its backup, which would
+     * otherwise be restored), i.e. without loading them in this process before they are
+     * preloaded.
+     *
+     * @param context the context of the shared preferences
+     *
+     * @throws IOException if the shared preferences couldn't be stored
+     */
+    private static void __storeSharedPreferences(Context context) throws IOException {
+        File directory = new File(context.getDataDir(), "shared_prefs");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("couldn't create " + directory);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, SHARED_PREFERENCES_NAME + ".xml.bak").delete();
+        try (FileOutputStream outputStream = new FileOutputStream(new File(directory, SHARED_PREFERENCES_NAME + ".xml"))) {
+            outputStream.write(SHARED_PREFERENCES_XML.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+}
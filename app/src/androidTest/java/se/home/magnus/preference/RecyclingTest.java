@@ -0,0 +1,324 @@
+package se.home.magnus.preference;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Color;
+import android.graphics.drawable.GradientDrawable;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.ImageView;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.preference.PreferenceFragmentCompat;
+import androidx.preference.PreferenceScreen;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import se.home.magnus.preference.checkbox.CheckBoxPreference;
+import se.home.magnus.preference.colorpicker.ColorPickerPreference;
+import se.home.magnus.preference.seekbar.EnumerationSeekBarPreference;
+import se.home.magnus.preference.seekbar.FloatSeekBarPreference;
+import se.home.magnus.preference.seekbar.TextSeekBarPreference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests that the preferences are safely recyclable, i.e. that a screen of many rows
+ * (see "RecyclingTestActivity") is scrolled down and up again while every bound row is checked to
+ * show the state of its own preference, that rows have actually been recycled, i.e. bound to more
+ * than one preference, and that dragging the seek bar of a recycled row only changes the value of
+ * the preference it is bound to.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RecyclingTest {
+
+    /**
+     * The values of the text seek bar preferences.
+     */
+    private String[] _textValueArray;
+
+    /**
+     * The values of the enumeration seek bar preferences.
+     */
+    private String[] _enumerationValueArray;
+
+    /**
+     * Persists a value different from the default value for (almost) every preference, i.e. the
+     * check box of every other check box row is checked, the value of every float seek bar is its
+     * row, the values of the text and enumeration seek bars and the colors of the color pickers
+     * vary by row (see "__getIndex" and "__getColor").
+     */
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        SharedPreferences.Editor editor = context.getSharedPreferences(RecyclingTestActivity.SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE).edit().clear();
+        _textValueArray = context.getResources().getStringArray(se.home.magnus.preference.test.R.array.recycling_text_values);
+        _enumerationValueArray = context.getResources().getStringArray(se.home.magnus.preference.test.R.array.recycling_enumeration_values);
+        for (int row = 0; row < RecyclingTestActivity.ROW_COUNT; row++) {
+            switch (RecyclingTestActivity.getKind(row)) {
+                case RecyclingTestActivity.CHECK_BOX_KIND:
+                    editor.putBoolean(RecyclingTestActivity.getKey(row), __isChecked(row));
+                    break;
+                case RecyclingTestActivity.FLOAT_SEEK_BAR_KIND:
+                    editor.putFloat(RecyclingTestActivity.getKey(row), row);
+                    break;
+                case RecyclingTestActivity.TEXT_SEEK_BAR_KIND:
+                    editor.putFloat(RecyclingTestActivity.getKey(row), Float.parseFloat(_textValueArray[__getIndex(row, _textValueArray.length)]));
+                    break;
+                case RecyclingTestActivity.ENUMERATION_SEEK_BAR_KIND:
+                    editor.putString(RecyclingTestActivity.getKey(row), _enumerationValueArray[__getIndex(row, _enumerationValueArray.length)]);
+                    break;
+                case RecyclingTestActivity.COLOR_PICKER_KIND:
+                    editor.putInt(RecyclingTestActivity.getKey(row), __getColor(row));
+                    break;
+                default:
+                    // NOTE that a button has no persisted value
+                    break;
+            }
+        }
+        editor.commit();
+    }
+
+    /**
+     * Scrolls the preference screen to its end and back to its start, and checks the bound rows
+     * after every scroll step.
+     */
+    @Test
+    public void testScrolling() {
+        try (ActivityScenario<RecyclingTestActivity> scenario = ActivityScenario.launch(RecyclingTestActivity.class)) {
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            scenario.onActivity(new ActivityScenario.ActivityAction<RecyclingTestActivity>() {
+                /**
+                 * Scrolls the list of the preference fragment, which binds the rows synchronously.
+                 *
+                 * @param activity the activity hosting the preference fragment
+                 */
+                @Override
+                public void perform(RecyclingTestActivity activity) {
+                    PreferenceFragmentCompat fragment = (PreferenceFragmentCompat) activity.getSupportFragmentManager().findFragmentById(android.R.id.content);
+                    RecyclerView listView = fragment.getListView();
+                    Map<RecyclerView.ViewHolder, Integer> positionMap = new IdentityHashMap<>();
+                    int recycledCount = 0, step = listView.getHeight() / 3;
+                    assertTrue("the screen must not fit on the display", listView.canScrollVertically(1));
+                    recycledCount += __assertRows(fragment.getPreferenceScreen(), listView, positionMap);
+                    while (listView.canScrollVertically(1)) {
+                        listView.scrollBy(0, step);
+                        recycledCount += __assertRows(fragment.getPreferenceScreen(), listView, positionMap);
+                    }
+                    while (listView.canScrollVertically(-1)) {
+                        listView.scrollBy(0, -step);
+                        recycledCount += __assertRows(fragment.getPreferenceScreen(), listView, positionMap);
+                    }
+                    assertTrue("rows must be recycled", recycledCount > 0 && positionMap.size() < RecyclingTestActivity.ROW_COUNT);
+                }
+            });
+        }
+    }
+
+    /**
+     * Scrolls the preference screen to its end, drags the seek bar of a float seek bar row which
+     * has been recycled from another float seek bar preference to its start, and checks that only
+     * the value (and the persisted value) of the preference the row is bound to has changed, i.e.
+     * that no listener of the preference the row was bound to before is left on the seek bar.
+     */
+    @Test
+    public void testDraggingRecycledRow() {
+        try (ActivityScenario<RecyclingTestActivity> scenario = ActivityScenario.launch(RecyclingTestActivity.class)) {
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            scenario.onActivity(new ActivityScenario.ActivityAction<RecyclingTestActivity>() {
+                /**
+                 * Scrolls the list of the preference fragment, which binds the rows synchronously,
+                 * and drags the seek bar of a recycled row.
+                 *
+                 * @param activity the activity hosting the preference fragment
+                 */
+                @Override
+                public void perform(RecyclingTestActivity activity) {
+                    PreferenceFragmentCompat fragment = (PreferenceFragmentCompat) activity.getSupportFragmentManager().findFragmentById(android.R.id.content);
+                    RecyclerView listView = fragment.getListView();
+                    SharedPreferences sharedPreferences = activity.getSharedPreferences(RecyclingTestActivity.SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+                    Map<RecyclerView.ViewHolder, Integer> firstPositionMap = new IdentityHashMap<>();
+                    RecyclerView.ViewHolder viewHolder;
+                    SeekBar seekBar = null;
+                    int draggedPosition = RecyclerView.NO_POSITION, step = listView.getHeight() / 3;
+                    __putFirstPositions(listView, firstPositionMap);
+                    while (listView.canScrollVertically(1)) {
+                        listView.scrollBy(0, step);
+                        __putFirstPositions(listView, firstPositionMap);
+                    }
+                    for (int i = 0; i < listView.getChildCount() && seekBar == null; i++) {
+                        viewHolder = listView.getChildViewHolder(listView.getChildAt(i));
+                        draggedPosition = viewHolder.getBindingAdapterPosition();
+                        if (draggedPosition != RecyclerView.NO_POSITION && RecyclingTestActivity.getKind(draggedPosition) == RecyclingTestActivity.FLOAT_SEEK_BAR_KIND && firstPositionMap.get(viewHolder) != draggedPosition) {
+                            seekBar = viewHolder.itemView.findViewById(R.id.seekbar);
+                        }
+                    }
+                    assertNotNull("a float seek bar row must be recycled", seekBar);
+                    __drag(seekBar, seekBar.getWidth() / 2f, 0);
+                    for (int row = 0; row < RecyclingTestActivity.ROW_COUNT; row++) {
+                        if (RecyclingTestActivity.getKind(row) == RecyclingTestActivity.FLOAT_SEEK_BAR_KIND) {
+                            assertEquals("row " + row, row == draggedPosition ? 0 : row, ((FloatSeekBarPreference) fragment.getPreferenceScreen().getPreference(row)).getValue(), 0);
+                            assertEquals("row " + row, row == draggedPosition ? 0 : row, sharedPreferences.getFloat(RecyclingTestActivity.getKey(row), -1), 0);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks that every bound row shows the state of its own preference.
+     *
+     * @param preferenceScreen the preference screen of the preference fragment
+     * @param listView         the list of the preference fragment
+     * @param positionMap      the latest positions the view holders were seen at
+     *
+     * @return the number of view holders seen at another position than before, i.e. recycled
+     */
+    private int __assertRows(@NonNull PreferenceScreen preferenceScreen, @NonNull RecyclerView listView, @NonNull Map<RecyclerView.ViewHolder, Integer> positionMap) {
+        RecyclerView.ViewHolder viewHolder;
+        Integer previousPosition;
+        View view;
+        int position, index, recycledCount = 0;
+        for (int i = 0; i < listView.getChildCount(); i++) {
+            viewHolder = listView.getChildViewHolder(listView.getChildAt(i));
+            if ((position = viewHolder.getBindingAdapterPosition()) == RecyclerView.NO_POSITION) {
+                continue;
+            }
+            if ((previousPosition = positionMap.put(viewHolder, position)) != null && previousPosition != position) {
+                recycledCount++;
+            }
+            view = viewHolder.itemView;
+            if (RecyclingTestActivity.getKind(position) != RecyclingTestActivity.BUTTON_KIND) {
+                assertEquals(RecyclingTestActivity.getKey(position), ((TextView) view.findViewById(android.R.id.title)).getText().toString());
+            }
+            switch (RecyclingTestActivity.getKind(position)) {
+                case RecyclingTestActivity.CHECK_BOX_KIND:
+                    assertEquals("row " + position, __isChecked(position), ((CheckBox) view.findViewById(R.id.check_box)).isChecked());
+                    assertEquals("row " + position, __isChecked(position), ((CheckBoxPreference) preferenceScreen.getPreference(position)).isChecked());
+                    break;
+                case RecyclingTestActivity.FLOAT_SEEK_BAR_KIND:
+                    assertEquals("row " + position, position, ((FloatSeekBarPreference) preferenceScreen.getPreference(position)).getValue(), 0);
+                    assertEquals("row " + position, position, ((SeekBar) view.findViewById(R.id.seekbar)).getProgress());
+                    assertEquals("row " + position, String.format(Locale.getDefault(Locale.Category.FORMAT), "%d", position), ((TextView) view.findViewById(R.id.seekbar_value)).getText().toString());
+                    break;
+                case RecyclingTestActivity.TEXT_SEEK_BAR_KIND:
+                    index = __getIndex(position, _textValueArray.length);
+                    assertEquals("row " + position, Float.parseFloat(_textValueArray[index]), ((TextSeekBarPreference) preferenceScreen.getPreference(position)).getValue(), 0);
+                    assertEquals("row " + position, index, ((SeekBar) view.findViewById(R.id.seekbar)).getProgress());
+                    break;
+                case RecyclingTestActivity.ENUMERATION_SEEK_BAR_KIND:
+                    index = __getIndex(position, _enumerationValueArray.length);
+                    assertEquals("row " + position, _enumerationValueArray[index], ((EnumerationSeekBarPreference) preferenceScreen.getPreference(position)).getValue());
+                    assertEquals("row " + position, index, ((SeekBar) view.findViewById(R.id.seekbar)).getProgress());
+                    break;
+                case RecyclingTestActivity.COLOR_PICKER_KIND:
+                    assertEquals("row " + position, __getColor(position), ((ColorPickerPreference) preferenceScreen.getPreference(position)).getColor());
+                    assertEquals("row " + position, __getColor(position), ((GradientDrawable) ((ImageView) view.findViewById(R.id.selected_color)).getDrawable()).getColor().getDefaultColor());
+                    break;
+                default:
+                    assertEquals("row " + position, RecyclingTestActivity.getTextColor(position), ((Button) view.findViewById(R.id.button)).getCurrentTextColor());
+                    break;
+            }
+        }
+        return recycledCount;
+    }
+
+    /**
+     * Remembers the first bound position of every view holder of the bound rows.
+     *
+     * @param listView         the list of the preference fragment
+     * @param firstPositionMap the first positions the view holders were seen at
+     */
+    private static void __putFirstPositions(@NonNull RecyclerView listView, @NonNull Map<RecyclerView.ViewHolder, Integer> firstPositionMap) {
+        RecyclerView.ViewHolder viewHolder;
+        for (int i = 0; i < listView.getChildCount(); i++) {
+            viewHolder = listView.getChildViewHolder(listView.getChildAt(i));
+            if (viewHolder.getBindingAdapterPosition() != RecyclerView.NO_POSITION) {
+                firstPositionMap.putIfAbsent(viewHolder, viewHolder.getBindingAdapterPosition());
+            }
+        }
+    }
+
+    /**
+     * Drags a seek bar horizontally by dispatching touch events to it. NOTE that the seek bar is
+     * in a scrolling container, i.e. the drag starts at the first move beyond the touch slop.
+     *
+     * @param seekBar a seek bar
+     * @param fromX   the start of the drag (in the coordinates of the seek bar)
+     * @param toX     the end of the drag (in the coordinates of the seek bar)
+     */
+    private static void __drag(@NonNull SeekBar seekBar, float fromX, float toX) {
+        long downTime = SystemClock.uptimeMillis();
+        float y = seekBar.getHeight() / 2f;
+        __dispatch(seekBar, MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, fromX, y, 0));
+        __dispatch(seekBar, MotionEvent.obtain(downTime, downTime + 10, MotionEvent.ACTION_MOVE, (fromX + toX) / 2, y, 0));
+        __dispatch(seekBar, MotionEvent.obtain(downTime, downTime + 20, MotionEvent.ACTION_MOVE, toX, y, 0));
+        __dispatch(seekBar, MotionEvent.obtain(downTime, downTime + 30, MotionEvent.ACTION_UP, toX, y, 0));
+    }
+
+    /**
+     * Dispatches a touch event to a view and recycles the event.
+     *
+     * @param view        a view
+     * @param motionEvent a touch event
+     */
+    private static void __dispatch(@NonNull View view, @NonNull MotionEvent motionEvent) {
+        view.dispatchTouchEvent(motionEvent);
+        motionEvent.recycle();
+    }
+
+    /**
+     * Tells whether or not the check box of a row is checked.
+     *
+     * @param row a row
+     *
+     * @return true if the check box is checked, otherwise false
+     */
+    private static boolean __isChecked(int row) {
+        return (row / RecyclingTestActivity.KIND_COUNT) % 2 == 0;
+    }
+
+    /**
+     * Returns the position index of the value of a (text or enumeration seek bar) row in its value
+     * array, which differs between the neighbouring rows of the same kind.
+     *
+     * @param row   a row
+     * @param count the number of values
+     *
+     * @return a position index
+     */
+    private static int __getIndex(int row, int count) {
+        return (row / RecyclingTestActivity.KIND_COUNT) % count;
+    }
+
+    /**
+     * Returns the color of a (color picker) row, which differs from the color of every other row.
+     *
+     * @param row a row
+     *
+     * @return a color
+     */
+    private static @ColorInt int __getColor(int row) {
+        return Color.rgb(0, row, 255);
+    }
+
+}
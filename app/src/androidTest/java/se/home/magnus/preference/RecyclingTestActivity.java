@@ -0,0 +1,239 @@
+package se.home.magnus.preference;
+
+import android.content.Context;
+import android.content.res.XmlResourceParser;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.util.AttributeSet;
+import android.util.Xml;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceFragmentCompat;
+import androidx.preference.PreferenceScreen;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+
+import se.home.magnus.preference.button.ButtonPreference;
+import se.home.magnus.preference.checkbox.CheckBoxPreference;
+import se.home.magnus.preference.colorpicker.ColorPickerPreference;
+import se.home.magnus.preference.seekbar.EnumerationSeekBarPreference;
+import se.home.magnus.preference.seekbar.FloatSeekBarPreference;
+import se.home.magnus.preference.seekbar.TextSeekBarPreference;
+
+/**
+ * This class is the activity hosting the preference screen of the recycling test (see
+ * "RecyclingTest"), i.e. a screen of many more rows than fit on the display where the rows are
+ * check box, float seek bar, text seek bar, enumeration seek bar, color picker and button
+ * preferences in turn (see "getKind").
+ */
+public class RecyclingTestActivity extends AppCompatActivity {
+
+    /**
+     * The name of the shared preferences of the preference screen.
+     */
+    public static final String SHARED_PREFERENCES_NAME = "recycling_test";
+
+    /**
+     * The number of rows of the preference screen.
+     */
+    public static final int ROW_COUNT = 100;
+
+    /**
+     * The kind of a row of a check box preference.
+     */
+    public static final int CHECK_BOX_KIND = 0;
+
+    /**
+     * The kind of a row of a float seek bar preference.
+     */
+    public static final int FLOAT_SEEK_BAR_KIND = 1;
+
+    /**
+     * The kind of a row of a text seek bar preference.
+     */
+    public static final int TEXT_SEEK_BAR_KIND = 2;
+
+    /**
+     * The kind of a row of an enumeration seek bar preference.
+     */
+    public static final int ENUMERATION_SEEK_BAR_KIND = 3;
+
+    /**
+     * The kind of a row of a color picker preference.
+     */
+    public static final int COLOR_PICKER_KIND = 4;
+
+    /**
+     * The kind of a row of a button preference.
+     */
+    public static final int BUTTON_KIND = 5;
+
+    /**
+     * The number of kinds of rows.
+     */
+    public static final int KIND_COUNT = 6;
+
+    /**
+     * The key prefixes of the kinds of rows.
+     */
+    private static final String[] KEY_PREFIX_ARRAY = {"check_box_", "float_seek_bar_", "text_seek_bar_", "enumeration_seek_bar_", "color_picker_", "button_"};
+
+    /**
+     * The XML resources of the kinds of rows.
+     */
+    private static final int[] XML_ID_ARRAY = {se.home.magnus.preference.test.R.xml.recycling_check_box_preference, se.home.magnus.preference.test.R.xml.recycling_float_seek_bar_preference, se.home.magnus.preference.test.R.xml.recycling_text_seek_bar_preference, se.home.magnus.preference.test.R.xml.recycling_enumeration_seek_bar_preference, se.home.magnus.preference.test.R.xml.recycling_color_picker_preference, se.home.magnus.preference.test.R.xml.recycling_button_preference};
+
+    /**
+     * Adds the preference fragment (unless it is restored).
+     *
+     * @param savedInstanceState the saved state of this activity or null
+     */
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (savedInstanceState == null) {
+            getSupportFragmentManager().beginTransaction().replace(android.R.id.content, new RecyclingTestFragment()).commitNow();
+        }
+    }
+
+    /**
+     * Returns the key of the preference of a row.
+     *
+     * @param row a row
+     *
+     * @return a key
+     */
+    @NonNull
+    public static String getKey(int row) {
+        return KEY_PREFIX_ARRAY[getKind(row)] + row;
+    }
+
+    /**
+     * Returns the kind of a row, e.g. "CHECK_BOX_KIND".
+     *
+     * @param row a row
+     *
+     * @return a kind
+     */
+    public static int getKind(int row) {
+        return row % KIND_COUNT;
+    }
+
+    /**
+     * Returns the text color of the button of a row (of a button preference), which differs from
+     * the text color of every other row.
+     *
+     * @param row a row
+     *
+     * @return a color
+     */
+    public static @ColorInt int getTextColor(int row) {
+        return Color.rgb(row, 0, 0);
+    }
+
+    /**
+     * This class is the preference fragment showing the preference screen.
+     */
+    public static class RecyclingTestFragment extends PreferenceFragmentCompat {
+
+        /**
+         * The argument holding the name of the shared preferences of the preference screen (which
+         * is "SHARED_PREFERENCES_NAME" if it isn't given).
+         */
+        private static final String SHARED_PREFERENCES_NAME_ARGUMENT = "shared_preferences_name";
+
+        /**
+         * Creates a preference fragment showing the preference screen persisted in the shared
+         * preferences of a name.
+         *
+         * @param sharedPreferencesName the name of the shared preferences
+         *
+         * @return a preference fragment
+         */
+        @NonNull
+        public static RecyclingTestFragment newInstance(@NonNull String sharedPreferencesName) {
+            RecyclingTestFragment fragment = new RecyclingTestFragment();
+            Bundle arguments = new Bundle();
+            arguments.putString(SHARED_PREFERENCES_NAME_ARGUMENT, sharedPreferencesName);
+            fragment.setArguments(arguments);
+            return fragment;
+        }
+
+        /**
+         * Creates the preference screen.
+         *
+         * @param savedInstanceState the saved state of this fragment or null
+         * @param rootKey            the key of the root preference or null
+         */
+        @Override
+        public void onCreatePreferences(@Nullable Bundle savedInstanceState, @Nullable String rootKey) {
+            PreferenceScreen preferenceScreen;
+            getPreferenceManager().setSharedPreferencesName(getArguments() != null ? getArguments().getString(SHARED_PREFERENCES_NAME_ARGUMENT, SHARED_PREFERENCES_NAME) : SHARED_PREFERENCES_NAME);
+            preferenceScreen = getPreferenceManager().createPreferenceScreen(requireContext());
+            for (int row = 0; row < ROW_COUNT; row++) {
+                preferenceScreen.addPreference(__createPreference(requireContext(), row));
+            }
+            setPreferenceScreen(preferenceScreen);
+        }
+
+        /**
+         * Creates the preference of a row from the attributes of its XML resource.
+         *
+         * @param context a context
+         * @param row     a row
+         *
+         * @return a preference
+         *
+         * @throws RuntimeException
+         * @noinspection JavadocDeclaration, RedundantSuppression
+         */
+        @NonNull
+        private static Preference __createPreference(@NonNull Context context, int row) throws RuntimeException {
+            Preference preference;
+            AttributeSet attributeSet;
+            try (XmlResourceParser parser = context.getResources().getXml(XML_ID_ARRAY[getKind(row)])) {
+                while (parser.next() != XmlPullParser.START_TAG) {
+                    // NOTE that the attributes are the ones of the first (and only) tag
+                }
+                attributeSet = Xml.asAttributeSet(parser);
+                switch (getKind(row)) {
+                    case CHECK_BOX_KIND:
+                        preference = new CheckBoxPreference(context, attributeSet);
+                        break;
+                    case FLOAT_SEEK_BAR_KIND:
+                        preference = new FloatSeekBarPreference(context, attributeSet);
+                        break;
+                    case TEXT_SEEK_BAR_KIND:
+                        preference = new TextSeekBarPreference(context, attributeSet);
+                        break;
+                    case ENUMERATION_SEEK_BAR_KIND:
+                        preference = new EnumerationSeekBarPreference(context, attributeSet);
+                        break;
+                    case COLOR_PICKER_KIND:
+                        preference = new ColorPickerPreference(context, attributeSet);
+                        break;
+                    default:
+                        // NOTE that a button has no persisted value, i.e. its row shows its own
+                        // text color instead
+                        preference = new ButtonPreference(context, attributeSet);
+                        ((ButtonPreference) preference).setTextColor(getTextColor(row));
+                        break;
+                }
+            } catch (XmlPullParserException | IOException exception) {
+                throw new RuntimeException(exception);
+            }
+            preference.setKey(getKey(row));
+            preference.setTitle(getKey(row));
+            return preference;
+        }
+
+    }
+
+}
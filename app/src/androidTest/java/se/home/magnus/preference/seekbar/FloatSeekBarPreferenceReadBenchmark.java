@@ -0,0 +1,124 @@
+package se.home.magnus.preference.seekbar;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.preference.PreferenceManager;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This class benchmarks reading the value of a float seek bar preference attached to a preference
+ * manager, i.e. the (cached) value returned by "getValue" against the persisted value read by the
+ * preference itself ("getPersistedFloat") as before the value was cached (see
+ * "PersistedValuePreference"). The reported time per read gives the reads per second.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FloatSeekBarPreferenceReadBenchmark {
+
+    /**
+     * The name of the shared preferences of the benchmark.
+     */
+    private static final String SHARED_PREFERENCES_NAME = "read_benchmark";
+
+    /**
+     * The key of the preference.
+     */
+    private static final String KEY = "float_seek_bar";
+
+    /**
+     * The persisted value of the preference.
+     */
+    private static final float VALUE = 0.5f;
+
+    /**
+     * The rule running the benchmarks.
+     */
+    @Rule
+    public final BenchmarkRule _benchmarkRule = new BenchmarkRule();
+
+    /**
+     * The preference whose value is read.
+     */
+    private ReadablePreference _preference;
+
+    /**
+     * The sum of the read values, which keeps the reads from being optimized away.
+     */
+    private float _sum;
+
+    /**
+     * Persists the value and attaches the preference to a preference manager using the shared
+     * preferences of the benchmark, i.e. the preference reads its initial (cached) value from them.
+     */
+    @SuppressLint("RestrictedApi")
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        PreferenceManager preferenceManager = new PreferenceManager(context);
+        context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE).edit().putFloat(KEY, VALUE).commit();
+        preferenceManager.setSharedPreferencesName(SHARED_PREFERENCES_NAME);
+        _preference = new ReadablePreference(context);
+        _preference.setKey(KEY);
+        preferenceManager.createPreferenceScreen(context).addPreference(_preference);
+        assertEquals(VALUE, _preference.getValue(), 0);
+        assertEquals(VALUE, _preference.readPersistedValue(), 0);
+    }
+
+    /**
+     * Benchmarks reading the (cached) value.
+     */
+    @Test
+    public void readCachedValue() {
+        BenchmarkState state = _benchmarkRule.getState();
+        while (state.keepRunning()) {
+            _sum += _preference.getValue();
+        }
+    }
+
+    /**
+     * Benchmarks reading the persisted value (from the loaded shared preferences).
+     */
+    @Test
+    public void readPersistedValue() {
+        BenchmarkState state = _benchmarkRule.getState();
+        while (state.keepRunning()) {
+            _sum += _preference.readPersistedValue();
+        }
+    }
+
+    /**
+     * This class is a float seek bar preference exposing its persisted read, i.e. the read path
+     * used before the value was cached.
+     */
+    private static final class ReadablePreference extends FloatSeekBarPreference {
+
+        /**
+         * @param context the context the preference is running in
+         */
+        ReadablePreference(@NonNull Context context) {
+            super(context, null);
+        }
+
+        /**
+         * Reads the persisted value.
+         *
+         * @return the persisted value
+         */
+        float readPersistedValue() {
+            return getPersistedFloat(0);
+        }
+
+    }
+
+}
@@ -0,0 +1,148 @@
+package se.home.magnus.preference.seekbar;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.drawable.GradientDrawable;
+import android.graphics.drawable.LayerDrawable;
+import android.graphics.drawable.ShapeDrawable;
+import android.graphics.drawable.shapes.OvalShape;
+import android.view.LayoutInflater;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import se.home.magnus.preference.R;
+
+/**
+ * This class benchmarks binding a float seek bar (see "FloatSeekBar.initialize") of an inflated
+ * float seek bar preference row with a warm drawable cache (see "SeekBarDrawableCache") against
+ * the construction of the drawables before the cache, i.e. a new oval thumb and a reconfigured
+ * track per bind. Both benchmarks alternate between two colors, i.e. they measure a recycled row
+ * bound to another preference, so that every bind sets a thumb and a track. The reported time per
+ * bind gives the binds per second and the reported allocation count gives the allocations per
+ * bind.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SeekBarDrawableBenchmark {
+
+    /**
+     * The value increment of the float seek bar.
+     */
+    private static final float INCREMENT = 0.05f;
+
+    /**
+     * The thickness (height) of the track (in pixels).
+     */
+    private static final int SIZE = 10;
+
+    /**
+     * The diameter (in pixels) of the thumb.
+     */
+    private static final int DIAMETER = 40;
+
+    /**
+     * The rule running the benchmarks.
+     */
+    @Rule
+    public final BenchmarkRule _benchmarkRule = new BenchmarkRule();
+
+    /**
+     * The float seek bar being bound.
+     */
+    private FloatSeekBar _floatSeekBar;
+
+    /**
+     * The listener the float seek bar is bound to, which ignores all notifications.
+     */
+    private final FloatSeekBar.OnSeekBarChangeListener _listener = new FloatSeekBar.OnSeekBarChangeListener() {
+        @Override
+        public void onProgressChanged(int progress, int maximum, boolean fromUser) {
+        }
+
+        @Override
+        public void onStartTrackingTouch() {
+        }
+
+        @Override
+        public void onStopTrackingTouch() {
+        }
+    };
+
+    /**
+     * Inflates a float seek bar preference row and gets its float seek bar.
+     */
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        _floatSeekBar = LayoutInflater.from(context).inflate(R.layout.float_seek_bar_preference, null).findViewById(R.id.seekbar);
+    }
+
+    /**
+     * Benchmarks a bind creating and configuring the thumb and the track as before the drawable
+     * cache, i.e. a new oval thumb and the layers of the track reconfigured.
+     */
+    @UiThreadTest
+    @Test
+    public void bindWithoutCache() {
+        BenchmarkState state = _benchmarkRule.getState();
+        int bindCount = 0;
+        while (state.keepRunning()) {
+            __bindWithoutCache(bindCount++);
+        }
+    }
+
+    /**
+     * Benchmarks a bind setting copies of the cached thumb and track.
+     */
+    @UiThreadTest
+    @Test
+    public void bindWithCache() {
+        BenchmarkState state = _benchmarkRule.getState();
+        int bindCount = 0;
+        // NOTE that the drawables of both colors are cached before the binds are measured
+        __bind(bindCount++);
+        __bind(bindCount++);
+        while (state.keepRunning()) {
+            __bind(bindCount++);
+        }
+    }
+
+    /**
+     * Binds the float seek bar as a float seek bar preference does.
+     *
+     * @param bindCount the number of previous binds, which selects the color
+     */
+    private void __bind(int bindCount) {
+        int color = bindCount % 2 == 0 ? Color.RED : Color.GREEN;
+        _floatSeekBar.initialize(_listener, INCREMENT, color, color, SIZE, DIAMETER);
+    }
+
+    /**
+     * Binds the float seek bar as a float seek bar preference did before the drawable cache.
+     *
+     * @param bindCount the number of previous binds, which selects the color
+     */
+    private void __bindWithoutCache(int bindCount) {
+        int color = bindCount % 2 == 0 ? Color.RED : Color.GREEN;
+        ShapeDrawable thumb = new ShapeDrawable(new OvalShape());
+        LayerDrawable track = (LayerDrawable) _floatSeekBar.getProgressDrawable();
+        thumb.setIntrinsicWidth(DIAMETER);
+        thumb.setIntrinsicHeight(DIAMETER);
+        ((GradientDrawable) track.findDrawableByLayerId(R.id.background)).setCornerRadius(SIZE);
+        for (int i = 0; i < track.getNumberOfLayers(); i++) {
+            track.setLayerHeight(i, SIZE);
+        }
+        track.setTint(color);
+        thumb.setTint(color);
+        _floatSeekBar.setThumb(thumb);
+    }
+
+}
@@ -0,0 +1,93 @@
+package se.home.magnus.preference.utility;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.preference.PreferenceManager;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * This class benchmarks inflating a preference screen mixing text, enumeration and float seek bar
+ * preferences and button preferences (see "attribute_config_cache_benchmark_screen.xml") by the
+ * preference manager with a cold configuration cache, i.e. every configuration is parsed (and
+ * validated) and then cached, as the first inflation does (see "AttributeConfigCache"), against a
+ * warm one. The reported time per inflation gives the inflations per second and the reported
+ * allocation count gives the allocations per inflation.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AttributeConfigCacheBenchmark {
+
+    /**
+     * The rule running the benchmarks.
+     */
+    @Rule
+    public final BenchmarkRule _benchmarkRule = new BenchmarkRule();
+
+    /**
+     * The context the preference screen is inflated in.
+     */
+    private Context _context;
+
+    /**
+     * Gets the context and starts with an empty configuration cache.
+     */
+    @Before
+    public void setUp() {
+        _context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        AttributeConfigCache.clear();
+    }
+
+    /**
+     * Empties the configuration cache again.
+     */
+    @After
+    public void tearDown() {
+        AttributeConfigCache.clear();
+    }
+
+    /**
+     * Benchmarks an inflation parsing (and validating) the attributes of every preference, i.e.
+     * with the configuration cache emptied (outside of the measurement) before every inflation.
+     */
+    @Test
+    public void inflateWithColdCache() {
+        BenchmarkState state = _benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            AttributeConfigCache.clear();
+            state.resumeTiming();
+            __inflate();
+        }
+    }
+
+    /**
+     * Benchmarks an inflation reusing the cached configurations.
+     */
+    @Test
+    public void inflateWithWarmCache() {
+        BenchmarkState state = _benchmarkRule.getState();
+        // NOTE that the configurations are cached before the inflations are measured
+        __inflate();
+        while (state.keepRunning()) {
+            __inflate();
+        }
+    }
+
+    /**
+     * Inflates the preference screen as a preference fragment does.
+     */
+    @SuppressLint("RestrictedApi")
+    private void __inflate() {
+        new PreferenceManager(_context).inflateFromResource(_context, se.home.magnus.preference.test.R.xml.attribute_config_cache_benchmark_screen, null);
+    }
+
+}
@@ -24,6 +24,7 @@ import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.StateListDrawable;
 import android.util.AttributeSet;
 import android.util.StateSet;
+import android.util.TypedValue;
 import android.view.View;
 import android.widget.Button;
 
@@ -36,7 +37,9 @@ import androidx.preference.PreferenceViewHolder;
 import java.util.regex.Matcher;
 
 import se.home.magnus.preference.R;
+import se.home.magnus.preference.utility.AttributeConfigCache;
 import se.home.magnus.preference.utility.Common;
+import se.home.magnus.preference.utility.DrawableStateCache;
 
 /**
  * This class is a button preference. To configure the button of this preference see
@@ -44,6 +47,13 @@ import se.home.magnus.preference.utility.Common;
  */
 public class ButtonPreference extends Preference {
 
+    /**
+     * The constant states of the (cached) backgrounds keyed by their corner radii and (then) by
+     * their "on colors" and "off colors", i.e. a background is only created once per key and is
+     * shared by all button preferences (with the same key).
+     */
+    private static final DrawableStateCache BACKGROUND_STATE_CACHE = new DrawableStateCache();
+
     /**
      * Tells whether or not the click listener is set. This is a solution to make the "click
      * listener dependency" mandatory. If the click listener isn't set (when needed) an exception is
@@ -82,6 +92,25 @@ public class ButtonPreference extends Preference {
      */
     private View.OnClickListener _clickListener;
 
+    /**
+     * The click listener of the button, which is the same for all binds.
+     */
+    private final View.OnClickListener _buttonClickListener = new View.OnClickListener() {
+        /**
+         * Called when a view has been clicked.
+         *
+         * @param view the view that was clicked
+         */
+        @Override
+        public void onClick(@NonNull View view) {
+            if (_isClickListenerSet) {
+                _clickListener.onClick(view);
+            } else {
+                throw new RuntimeException(getContext().getString(R.string.button_dependency_error));
+            }
+        }
+    };
+
     /**
      * @param context      the context this preference is running in, through which it can access
      *                     the current theme, resources, etc
@@ -93,34 +122,18 @@ public class ButtonPreference extends Preference {
      */
     public ButtonPreference(@NonNull Context context, @Nullable AttributeSet attributeSet) throws RuntimeException {
         super(context, attributeSet, 0);
-        int buttonRadius;
-        String value, text;
-        Matcher matcher;
-        // the solution below is chosen, since the "try (TypedArray ..." throws an exception
-        TypedArray typedAttributeArray = context.obtainStyledAttributes(attributeSet, R.styleable.ButtonPreference, 0, 0);
-        try {
-            if ((value = typedAttributeArray.getString(R.styleable.ButtonPreference_buttonRadius)) != null) {
-                matcher = Common.DIP_REGULAR_EXPRESSION_PATTERN.matcher(value);
-                if (matcher.find()) {
-                    buttonRadius = Common.densityIndependentPixelsToPixels(context, Integer.parseInt(matcher.group(1)));
-                } else {
-                    throw new RuntimeException(getContext().getString(R.string.generic_size_parse_error, value, Common.DIP_REGULAR_EXPRESSION_PATTERN.pattern()));
-                }
-            } else {
-                throw new RuntimeException(getContext().getString(R.string.button_mandatory_error, "buttonRadius"));
-            }
-            if ((text = typedAttributeArray.getString(R.styleable.ButtonPreference_buttonText)) == null) {
-                throw new RuntimeException(getContext().getString(R.string.button_mandatory_error, "buttonText"));
-            }
-            _isClickListenerSet = false;
-            _textColor = typedAttributeArray.getColor(R.styleable.ButtonPreference_buttonTextColor, context.getColor(android.R.color.white));
-            _backgroundColorOn = typedAttributeArray.getColor(R.styleable.ButtonPreference_buttonBackgroundColorOn, context.getColor(R.color.color_primary));
-            _backgroundColorOff = typedAttributeArray.getColor(R.styleable.ButtonPreference_buttonBackgroundColorOff, context.getColor(R.color.color_secondary_light));
-            _buttonRadius = buttonRadius;
-            _text = text;
-        } finally {
-            typedAttributeArray.recycle();
-        }
+        // NOTE that the configuration is parsed (and validated) once per XML tag, resource
+        // configuration and theme (see "AttributeConfigCache")
+        Config config = AttributeConfigCache.get(Config.class, context, attributeSet, Config::new);
+        _isClickListenerSet = false;
+        _textColor = config._textColor;
+        _backgroundColorOn = config._backgroundColorOn;
+        _backgroundColorOff = config._backgroundColorOff;
+        _buttonRadius = config._buttonRadius;
+        _text = config._text;
+        // NOTE that a button has no value, i.e. it never reads (or waits for) its shared
+        // preferences when it is attached to a preference hierarchy, even if it has a key
+        setPersistent(false);
     }
 
     /**
@@ -141,29 +154,13 @@ public class ButtonPreference extends Preference {
     public void onBindViewHolder(@NonNull PreferenceViewHolder preferenceViewHolder) throws RuntimeException {
         super.onBindViewHolder(preferenceViewHolder);
         Button button;
-        // the next statement is crucial because, if the "preference view holder" isn't set
-        // to be NOT recyclable, all "button preference" instances will share the same
-        // "button preference" instance
-        preferenceViewHolder.setIsRecyclable(false);
+        // NOTE that all the state of the button is (re)bound since the row may be recycled from
+        // another preference
         button = (Button) preferenceViewHolder.findViewById(R.id.button);
         button.setTextColor(_textColor);
         button.setBackground(__getBackground());
         button.setText(_text);
-        button.setOnClickListener(new View.OnClickListener() {
-            /**
-             * Called when a view has been clicked.
-             *
-             * @param view the view that was clicked
-             */
-            @Override
-            public void onClick(@NonNull View view) {
-                if (_isClickListenerSet) {
-                    _clickListener.onClick(view);
-                } else {
-                    throw new RuntimeException(getContext().getString(R.string.button_dependency_error));
-                }
-            }
-        });
+        button.setOnClickListener(_buttonClickListener);
     }
 
     /**
@@ -177,38 +174,66 @@ public class ButtonPreference extends Preference {
     }
 
     /**
-     * Sets the text color of this button.
+     * Sets the text color of this button (and rebinds the row of this preference, if any, if the
+     * color has changed).
      *
      * @param color a color
      */
     public void setTextColor(@ColorInt int color) {
-        _textColor = color;
+        if (color != _textColor) {
+            _textColor = color;
+            notifyChanged();
+        }
     }
 
     /**
-     * Sets the background "on color" of this button (i.e. when it is pressed).
+     * Sets the background "on color" of this button (i.e. when it is pressed), i.e. the row of this
+     * preference, if any, is rebound with another (cached) background if the color has changed.
      *
      * @param color a color
      */
     public void setBackgroundColorOn(@ColorInt int color) {
-        _backgroundColorOn = color;
+        if (color != _backgroundColorOn) {
+            _backgroundColorOn = color;
+            notifyChanged();
+        }
     }
 
     /**
-     * Sets the background "off color" of this button (i.e. its "normal" color).
+     * Sets the background "off color" of this button (i.e. its "normal" color), i.e. the row of
+     * this preference, if any, is rebound with another (cached) background if the color has
+     * changed.
      *
      * @param color a color
      */
     public void setBackgroundColorOff(@ColorInt int color) {
-        _backgroundColorOff = color;
+        if (color != _backgroundColorOff) {
+            _backgroundColorOff = color;
+            notifyChanged();
+        }
     }
 
     /**
-     * Creates the background of this button.
+     * Returns the background of this button as a (mutated) copy of the cached background, which is
+     * created if it isn't cached.
      *
      * @return a state list drawable
      */
     private Drawable __getBackground() {
+        long key = DrawableStateCache.getKey(_backgroundColorOn, _backgroundColorOff);
+        Drawable.ConstantState state;
+        if ((state = BACKGROUND_STATE_CACHE.get(getContext().getResources(), _buttonRadius, key)) == null) {
+            BACKGROUND_STATE_CACHE.put(_buttonRadius, key, state = __createBackground().getConstantState());
+        }
+        return DrawableStateCache.newDrawable(getContext().getResources(), state);
+    }
+
+    /**
+     * Creates the background of this button.
+     *
+     * @return a state list drawable
+     */
+    private Drawable __createBackground() {
         StateListDrawable stateListDrawable = new StateListDrawable();
         GradientDrawable buttonBackgroundOn = new GradientDrawable(), buttonBackgroundOff = new GradientDrawable();
         buttonBackgroundOn.setShape(GradientDrawable.RECTANGLE);
@@ -222,4 +247,80 @@ public class ButtonPreference extends Preference {
         return stateListDrawable;
     }
 
+    /**
+     * This class is the immutable (and validated) configuration of a button preference parsed from
+     * its XML attributes.
+     */
+    private static final class Config {
+
+        /**
+         * The text color of the button.
+         */
+        final int _textColor;
+
+        /**
+         * The background "on color" of the button (i.e. when it is pressed).
+         */
+        final int _backgroundColorOn;
+
+        /**
+         * The background "off color" of the button (i.e. its "normal" color).
+         */
+        final int _backgroundColorOff;
+
+        /**
+         * The corner radius of the background rectangle in pixels.
+         */
+        final int _buttonRadius;
+
+        /**
+         * The text of the button.
+         */
+        final String _text;
+
+        /**
+         * @param context      the context the preference is running in
+         * @param attributeSet the attributes of the XML tag that is inflating the preference,
+         *                     which may be null
+         *
+         * @throws RuntimeException
+         * @noinspection resource, JavadocDeclaration, RedundantSuppression
+         */
+        Config(@NonNull Context context, @Nullable AttributeSet attributeSet) throws RuntimeException {
+            int buttonRadius;
+            String text;
+            TypedValue value;
+            Matcher matcher;
+            // the solution below is chosen, since the "try (TypedArray ..." throws an exception
+            TypedArray typedAttributeArray = context.obtainStyledAttributes(attributeSet, R.styleable.ButtonPreference, 0, 0);
+            try {
+                // NOTE that the radius is a dimension (e.g. "8dp" or "@dimen/radius") which is parsed
+                // by the platform, and that a string (e.g. "@string/radius") is only supported in
+                // the "legacy" form "<integer>dp"
+                if ((value = typedAttributeArray.peekValue(R.styleable.ButtonPreference_buttonRadius)) != null) {
+                    if (value.type != TypedValue.TYPE_STRING) {
+                        buttonRadius = typedAttributeArray.getDimensionPixelSize(R.styleable.ButtonPreference_buttonRadius, 0);
+                    } else if ((matcher = Common.DIP_REGULAR_EXPRESSION_PATTERN.matcher(value.coerceToString())).find()) {
+                        buttonRadius = Common.densityIndependentPixelsToPixels(context, Integer.parseInt(matcher.group(1)));
+                    } else {
+                        throw new RuntimeException(context.getString(R.string.generic_size_parse_error, value.coerceToString(), Common.DIP_REGULAR_EXPRESSION_PATTERN.pattern()));
+                    }
+                } else {
+                    throw new RuntimeException(context.getString(R.string.button_mandatory_error, "buttonRadius"));
+                }
+                if ((text = typedAttributeArray.getString(R.styleable.ButtonPreference_buttonText)) == null) {
+                    throw new RuntimeException(context.getString(R.string.button_mandatory_error, "buttonText"));
+                }
+                _textColor = typedAttributeArray.getColor(R.styleable.ButtonPreference_buttonTextColor, context.getColor(android.R.color.white));
+                _backgroundColorOn = typedAttributeArray.getColor(R.styleable.ButtonPreference_buttonBackgroundColorOn, context.getColor(R.color.color_primary));
+                _backgroundColorOff = typedAttributeArray.getColor(R.styleable.ButtonPreference_buttonBackgroundColorOff, context.getColor(R.color.color_secondary_light));
+                _buttonRadius = buttonRadius;
+                _text = text;
+            } finally {
+                typedAttributeArray.recycle();
+            }
+        }
+
+    }
+
 }
@@ -18,7 +18,9 @@ package se.home.magnus.preference.checkbox;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.TypedArray;
+import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.widget.CheckBox;
 
@@ -26,22 +28,48 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.graphics.drawable.StateListDrawableCompat;
 import androidx.core.content.res.ResourcesCompat;
+import androidx.preference.PreferenceManager;
 import androidx.preference.PreferenceViewHolder;
 
 import se.home.magnus.preference.R;
 import se.home.magnus.preference.utility.Common;
+import se.home.magnus.preference.utility.DrawableStateCache;
+import se.home.magnus.preference.utility.PersistedValueObserver;
+import se.home.magnus.preference.utility.PreferenceDefaults;
 
 /**
  * This class is a check box preference. To configure the check box of this preference see
  * "check_box_preference.xml".
  */
-public class CheckBoxPreference extends androidx.preference.CheckBoxPreference {
+public class CheckBoxPreference extends androidx.preference.CheckBoxPreference implements PreferenceDefaults.Resettable {
+
+    /**
+     * The constant states of the (cached) button drawables keyed by their "checked" and (then)
+     * "unchecked" image resource ids, i.e. a button drawable is only created once per key and is
+     * shared by all check box preferences (with the same key). NOTE that the button drawables are
+     * created again when the UI mode (e.g. the night mode) changes, since the image resources may
+     * depend on it (see "DrawableStateCache").
+     */
+    private static final DrawableStateCache BUTTON_STATE_CACHE = new DrawableStateCache();
 
     /**
      * The default checked state.
      */
     private final boolean _isCheckedDefault;
 
+    /**
+     * The (cached) checked state, which is read by "isChecked" from any thread without locking.
+     * NOTE that this is a mirror of the checked state of the superclass (see "setChecked"), which
+     * e.g. shows the "summary on" or the "summary off".
+     */
+    private volatile boolean _isChecked;
+
+    /**
+     * Tells whether or not the checked state is being updated without being persisted (see
+     * "__updateChecked").
+     */
+    private boolean _isPersistSkipped;
+
     /**
      * The resource id of the "checked" image.
      */
@@ -53,9 +81,33 @@ public class CheckBoxPreference extends androidx.preference.CheckBoxPreference {
     private final int _uncheckedId;
 
     /**
-     * The check box of this check box preference.
+     * The observer keeping the (cached) checked state current when it is changed by someone else
+     * than this preference (e.g. when the shared preferences are edited directly). NOTE that it is
+     * wired into this preference as "PersistedValuePreference" does, which this preference can't
+     * extend since it extends "androidx.preference.CheckBoxPreference".
      */
-    private CheckBox _checkBox;
+    private final PersistedValueObserver _persistedValueObserver = new PersistedValueObserver(this, new PersistedValueObserver.OnRefreshListener() {
+        /**
+         * Reads the persisted checked state again and rebinds the row of this preference if it has
+         * changed.
+         */
+        @Override
+        public void onRefresh() {
+            boolean value;
+            if ((value = getPersistedBoolean(_isCheckedDefault)) != _isChecked) {
+                __updateChecked(value);
+            }
+        }
+
+        /**
+         * Persists the checked state, which was changed while the shared preferences were being
+         * preloaded.
+         */
+        @Override
+        public void onPersist() {
+            persistBoolean(_isChecked);
+        }
+    });
 
     /**
      * @param context      the context this preference is running in, through which it can access
@@ -68,7 +120,7 @@ public class CheckBoxPreference extends androidx.preference.CheckBoxPreference {
         // the solution below is chosen, since the "try (TypedArray ..." throws an exception
         TypedArray typedAttributeArray = context.obtainStyledAttributes(attributeSet, R.styleable.CheckBoxPreference, 0, 0);
         try {
-            _isCheckedDefault = typedAttributeArray.getBoolean(R.styleable.CheckBoxPreference_displayPlayerDefaultValue, false);
+            _isChecked = _isCheckedDefault = typedAttributeArray.getBoolean(R.styleable.CheckBoxPreference_displayPlayerDefaultValue, false);
             if ((_checkedId = typedAttributeArray.getResourceId(R.styleable.CheckBoxPreference_checkedId, -1)) < 0) {
                 throw new RuntimeException(getContext().getString(R.string.check_box_preference_mandatory_error, "checkedId"));
             }
@@ -97,44 +149,165 @@ public class CheckBoxPreference extends androidx.preference.CheckBoxPreference {
     @Override
     public void onBindViewHolder(@NonNull PreferenceViewHolder preferenceViewHolder) throws RuntimeException {
         super.onBindViewHolder(preferenceViewHolder);
-        StateListDrawableCompat buttonStateList = new StateListDrawableCompat();
-        // the next statement is crucial because, if the "preference view holder" isn't set
-        // to be NOT recyclable, all "check box preference" instances will share the same
-        // "check box preference" instance
-        preferenceViewHolder.setIsRecyclable(false);
-        buttonStateList.addState(new int[]{android.R.attr.state_checked}, ResourcesCompat.getDrawable(getContext().getResources(), _checkedId, null));
-        buttonStateList.addState(new int[]{-android.R.attr.state_checked}, ResourcesCompat.getDrawable(getContext().getResources(), _uncheckedId, null));
-        _checkBox = (CheckBox) preferenceViewHolder.findViewById(R.id.check_box);
-        _checkBox.setButtonDrawable(buttonStateList);
-        if (getPersistedBoolean(_isCheckedDefault)) {
-            _checkBox.performClick();
-        }
+        CheckBox checkBox = (CheckBox) preferenceViewHolder.findViewById(R.id.check_box);
+        checkBox.setButtonDrawable(__getButtonDrawable());
+        // NOTE that the checked state is always set since the row may be recycled from another
+        // preference, and that it is set without animations (i.e. it is restored, not toggled)
+        checkBox.setChecked(_isChecked);
+        checkBox.jumpDrawablesToCurrentState();
     }
 
     /**
-     * Processes a click on this preference.
+     * Sets the default checked state of this preference.
      */
-    @Override
-    protected void onClick() {
-        _checkBox.performClick();
-        persistBoolean(_checkBox.isChecked());
+    public void setDefaultState() {
+        setChecked(_isCheckedDefault);
     }
 
     /**
-     * Sets the default checked state of this preference.
+     * Resets this preference to its default checked state and rebinds its row (see
+     * "PreferenceDefaults.resetAll").
+     *
+     * @param editor an editor of the shared preferences or null if there isn't any editor
      */
-    public void setDefaultState() {
-        _checkBox.setChecked(_isCheckedDefault);
-        persistBoolean(_isCheckedDefault);
+    @Override
+    public void resetDefault(@Nullable SharedPreferences.Editor editor) {
+        if (PreferenceDefaults.isEdited(this, editor)) {
+            editor.putBoolean(getKey(), _isCheckedDefault);
+        } else {
+            persistBoolean(_isCheckedDefault);
+        }
+        __updateChecked(_isCheckedDefault);
     }
 
     /**
-     * Returns the checked state, i.e. whether this check box preference is checked or not.
+     * Returns the checked state, i.e. whether this check box preference is checked or not. NOTE
+     * that the checked state is the default one while the shared preferences are being preloaded
+     * (see "PersistedValueObserver"), unless it has been changed in the meantime.
      *
      * @return the checked state
      */
+    @Override
     public boolean isChecked() {
-        return getPersistedBoolean(_isCheckedDefault);
+        return _isChecked;
+    }
+
+    /**
+     * Sets the checked state of this preference, persists it and rebinds the row of this
+     * preference (if the checked state has changed). NOTE that the checked state is mirrored
+     * before the superclass sets it, since the superclass persists it and notifies the dependents
+     * of this preference. A click is processed by the superclass, which sets the checked state
+     * through this method, i.e. the check box isn't updated directly since its row may be
+     * recycled (i.e. belong to another preference) or not bound yet, instead the row is rebound.
+     *
+     * @param checked the checked state
+     */
+    @Override
+    public void setChecked(boolean checked) {
+        _isChecked = checked;
+        super.setChecked(checked);
+    }
+
+    /**
+     * Initializes the checked state to the persisted checked state (without persisting it). NOTE
+     * that the default checked state is given by "displayPlayerDefaultValue" (and not by
+     * "defaultValue").
+     *
+     * @param defaultValue the default value given by "defaultValue", which is ignored
+     */
+    @Override
+    protected void onSetInitialValue(@Nullable Object defaultValue) {
+        __updateChecked(getPersistedBoolean(_isCheckedDefault));
+    }
+
+    /**
+     * See "PersistedValuePreference.onAttachedToHierarchy".
+     *
+     * @param preferenceManager the preference manager of the hierarchy
+     */
+    @Override
+    protected void onAttachedToHierarchy(@NonNull PreferenceManager preferenceManager) {
+        _persistedValueObserver.onAttachedToHierarchy(preferenceManager);
+        super.onAttachedToHierarchy(preferenceManager);
+    }
+
+    /**
+     * See "PersistedValuePreference.shouldPersist".
+     *
+     * @return true if the value is read and written, otherwise false
+     */
+    @Override
+    protected boolean shouldPersist() {
+        return super.shouldPersist() && !_persistedValueObserver.isLoading();
+    }
+
+    /**
+     * Persists the checked state (see "PersistedValuePreference.persistBoolean") unless it is
+     * updated from its persisted value (see "__updateChecked").
+     *
+     * @param value the checked state
+     *
+     * @return true if the checked state is persisted, otherwise false
+     */
+    @Override
+    protected boolean persistBoolean(boolean value) {
+        if (_isPersistSkipped) {
+            return false;
+        }
+        return _persistedValueObserver.onPersisted(super.persistBoolean(value));
+    }
+
+    /**
+     * See "PersistedValuePreference.onAttached".
+     */
+    @Override
+    public void onAttached() {
+        super.onAttached();
+        _persistedValueObserver.onAttached();
+    }
+
+    /**
+     * See "PersistedValuePreference.onDetached".
+     */
+    @Override
+    public void onDetached() {
+        super.onDetached();
+        _persistedValueObserver.onDetached();
+    }
+
+    /**
+     * Updates the checked state without persisting it, i.e. the (cached) checked state and the one
+     * of the superclass, notifies the dependents of this preference and rebinds its row (if the
+     * checked state has changed).
+     *
+     * @param checked the checked state
+     */
+    private void __updateChecked(boolean checked) {
+        _isPersistSkipped = true;
+        try {
+            setChecked(checked);
+        } finally {
+            _isPersistSkipped = false;
+        }
+    }
+
+    /**
+     * Returns a (mutated) copy of the cached button drawable of the check box, which is created if
+     * it isn't cached.
+     *
+     * @return a state list drawable
+     */
+    @NonNull
+    private Drawable __getButtonDrawable() {
+        Drawable.ConstantState state;
+        StateListDrawableCompat buttonStateList;
+        if ((state = BUTTON_STATE_CACHE.get(getContext().getResources(), _checkedId, _uncheckedId)) == null) {
+            buttonStateList = new StateListDrawableCompat();
+            buttonStateList.addState(new int[]{android.R.attr.state_checked}, ResourcesCompat.getDrawable(getContext().getResources(), _checkedId, null));
+            buttonStateList.addState(new int[]{-android.R.attr.state_checked}, ResourcesCompat.getDrawable(getContext().getResources(), _uncheckedId, null));
+            BUTTON_STATE_CACHE.put(_checkedId, _uncheckedId, state = buttonStateList.getConstantState());
+        }
+        return DrawableStateCache.newDrawable(getContext().getResources(), state);
     }
 
 }
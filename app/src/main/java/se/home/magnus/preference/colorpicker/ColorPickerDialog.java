@@ -3,10 +3,16 @@ package se.home.magnus.preference.colorpicker;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.drawable.GradientDrawable;
+import android.graphics.drawable.ShapeDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
@@ -18,22 +24,184 @@ import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import se.home.magnus.preference.R;
+import se.home.magnus.preference.utility.Common;
 
 /**
  * This class is a wrapper around an alert dialog intended to be used for selecting colors.
  */
 public class ColorPickerDialog {
 
+    /**
+     * The shared dialogs (see {@link #getSharedInstance}), i.e. at most one dialog per context.
+     * NOTE that neither the contexts nor the dialogs are strongly referenced, i.e. a dialog (and
+     * its context) which is no longer used by any client can be garbage collected even if it
+     * hasn't been released.
+     */
+    private static final Map<Context, WeakReference<ColorPickerDialog>> SHARED_DIALOG_MAP = new WeakHashMap<>();
+
+    /**
+     * The (single) background thread on which the color picker images are decoded.
+     */
+    private static final ExecutorService DECODE_EXECUTOR = Executors.newSingleThreadExecutor(Common.newDaemonThreadFactory("ColorPickerDecoder"));
+
+    /**
+     * Tells whether or not the color picker image has been rasterized into the "pixel array" since
+     * the color picker image or its size was last changed.
+     */
+    private boolean _isRasterized;
+
+    /**
+     * Tells whether or not the color picker image has been decoded (or is being decoded) into the
+     * "color picker bitmap" since the color picker image or the available width was last changed.
+     */
+    private boolean _isDecoded;
+
+    /**
+     * Tells whether or not the color picker image view shows a transparent placeholder (with the
+     * native size of the color picker image) until it has been laid out, i.e. until the width at
+     * which the color picker image is displayed is known.
+     */
+    private boolean _isPlaceholderShown;
+
+    /**
+     * Tells whether or not a decode of the color picker image is in progress, i.e. whether or not
+     * its result hasn't been set yet.
+     */
+    private boolean _isDecodePending;
+
+    /**
+     * Tells whether or not the summed-area tables have been built from the current "pixel array".
+     */
+    private boolean _isSummed;
+
+    /**
+     * Tells whether or not the color picker image is the "analytic" color wheel (see
+     * {@link ColorWheelDrawable}) rather than an image resource.
+     */
+    private boolean _isColorWheel;
+
+    /**
+     * Tells whether or not a frame callback applying the latest touch is pending.
+     */
+    private boolean _isFramePending;
+
     /**
      * The selected color.
      */
     private int _selectedColor;
 
+    /**
+     * The resource id of the color picker image, or 0 if no image has been set.
+     */
+    private int _colorPickerImageId;
+
+    /**
+     * The width (in pixels) available to the color picker image view, i.e. the width it was laid
+     * out at by the alert dialog, or 0 if the color picker image view hasn't been laid out with
+     * the current color picker image yet.
+     */
+    private int _availableWidth;
+
+    /**
+     * The number of decodes of the color picker image that have been started, which is used to
+     * discard the result of a decode superseded by a later one.
+     */
+    private int _decodeCount;
+
+    /**
+     * The radius (in pixels) of the square around a touch whose mean color is picked, or 0 if the
+     * color of the single pixel under the touch is picked.
+     */
+    private int _sampleRadius;
+
+    /**
+     * The color picked in the color picker image, which becomes the selected color when the "ok"
+     * button is clicked.
+     */
+    private int _pickedColor;
+
+    /**
+     * The number of touch events that have been coalesced, i.e. superseded by a later touch event
+     * before the selected color image was updated.
+     */
+    private long _coalescedEventCount;
+
+    /**
+     * The horizontal position (in pixels) of the latest touch inside the color picker image.
+     */
+    private float _touchX;
+
+    /**
+     * The vertical position (in pixels) of the latest touch inside the color picker image.
+     */
+    private float _touchY;
+
+    /**
+     * The width (in pixels) of the rasterized color picker image.
+     */
+    private int _pixelWidth;
+
+    /**
+     * The height (in pixels) of the rasterized color picker image.
+     */
+    private int _pixelHeight;
+
+    /**
+     * The pixels of the rasterized color picker image (row by row).
+     */
+    private int[] _pixelArray;
+
+    /**
+     * The summed-area tables of the alpha channel and of the (alpha-premultiplied) red, green and
+     * blue channels of the "pixel array", each having (width + 1) * (height + 1) elements where the
+     * element at (x, y) is the sum of all pixels above and to the left of (x, y). NOTE that the
+     * sums are longs, since the channel sums of an image of more than Integer.MAX_VALUE / 255
+     * pixels would overflow ints, i.e. the mean color is picked whatever the size of the image.
+     */
+    private long[] _alphaSumArray, _redSumArray, _greenSumArray, _blueSumArray;
+
+    /**
+     * An array holding the hue, saturation and value while computing a color of the "analytic"
+     * color wheel.
+     */
+    private final float[] _hsvArray;
+
+    /**
+     * The color picker image decoded at (at most) the size at which it is displayed. NOTE that
+     * this bitmap is kept across openings of the alert dialog, i.e. the color picker image is only
+     * decoded again if it or the available width has changed.
+     */
+    private Bitmap _colorPickerBitmap;
+
+    /**
+     * The "analytic" color wheel, which is created the first time it is used.
+     */
+    private ColorWheelDrawable _colorWheelDrawable;
+
     /**
      * A selected color change listener.
      */
-    private final OnSelectedListener _selectedListener;
+    private OnSelectedListener _selectedListener;
+
+    /**
+     * The selected color change listeners of the clients using this dialog (see
+     * {@link #getSharedInstance}) which haven't released it yet.
+     */
+    private final Set<OnSelectedListener> _clientListenerSet;
+
+    /**
+     * The context in which the dialog is displayed.
+     */
+    private final Context _context;
 
     /**
      * The title text view in the alert dialog.
@@ -61,6 +229,28 @@ public class ColorPickerDialog {
      */
     private final AlertDialog _alertDialog;
 
+    /**
+     * The handler of the UI thread, on which the decoded color picker images are set.
+     */
+    private final Handler _handler;
+
+    /**
+     * The choreographer of the thread creating this dialog (i.e. the UI thread).
+     */
+    private final Choreographer _choreographer;
+
+    /**
+     * A frame callback applying the latest touch, i.e. the selected color image is updated at most
+     * once per frame.
+     */
+    private final Choreographer.FrameCallback _frameCallback;
+
+    /**
+     * A runnable rasterizing the color picker image into the "pixel array", which is posted when
+     * the color picker image or its size has changed (i.e. never run on the touch path).
+     */
+    private final Runnable _rasterizeRunnable;
+
     /**
      * @param context  the context in which the dialog is displayed
      * @param listener a selected color change listener
@@ -69,11 +259,38 @@ public class ColorPickerDialog {
      */
     @SuppressLint("ClickableViewAccessibility")
     public ColorPickerDialog(@NonNull Context context, @NonNull OnSelectedListener listener) {
-        int[] selectedColor = {0};
         LayoutInflater inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         View layout = inflater.inflate(R.layout.dialog_color_picker, null);
         AlertDialog.Builder builder = new AlertDialog.Builder(context, R.style.AlertDialogTheme);
         _selectedListener = listener;
+        _clientListenerSet = new HashSet<>();
+        _context = context;
+        _hsvArray = new float[3];
+        _handler = new Handler(Looper.getMainLooper());
+        _choreographer = Choreographer.getInstance();
+        _frameCallback = new Choreographer.FrameCallback() {
+            /**
+             * Called when a new display frame is being rendered.
+             *
+             * @param frameTimeNanos the time in nanoseconds when the frame started being rendered
+             */
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                __applyTouch();
+            }
+        };
+        _rasterizeRunnable = new Runnable() {
+            /**
+             * Rasterizes the color picker image unless the color picker image view is about to be
+             * laid out again (in which case the layout change listener posts this runnable anew).
+             */
+            @Override
+            public void run() {
+                if (!_isColorWheel && !_colorPickerImageView.isLayoutRequested()) {
+                    __rasterizeColorPickerImage();
+                }
+            }
+        };
         _titleTextView = layout.findViewById(R.id.dialog_title_text);
         _selectedTextView = layout.findViewById(R.id.dialog_selected_color_text);
         _selectedColorImageView = layout.findViewById(R.id.dialog_selected_color_image);
@@ -82,18 +299,49 @@ public class ColorPickerDialog {
             @Override
             public boolean onTouch(View view, MotionEvent event) {
                 if (event.getAction() == MotionEvent.ACTION_DOWN || event.getAction() == MotionEvent.ACTION_MOVE) {
-                    try {
-                        selectedColor[0] = __getBitmapFromView(_colorPickerImageView).getPixel((int) event.getX(), (int) event.getY());
-                        if (Color.alpha(selectedColor[0]) > 0) {
-                            ((GradientDrawable) _selectedColorImageView.getDrawable()).setColor(Color.argb(Color.alpha(selectedColor[0]), Color.red(selectedColor[0]), Color.green(selectedColor[0]), Color.blue(selectedColor[0])));
+                    // NOTE that touches outside the color picker image are rejected and that the
+                    // historical samples are only used if the latest sample is outside the image
+                    if (__isInside(event.getX(), event.getY())) {
+                        __recordTouch(event.getX(), event.getY());
+                    } else {
+                        for (int i = event.getHistorySize() - 1; i >= 0; i--) {
+                            if (__isInside(event.getHistoricalX(i), event.getHistoricalY(i))) {
+                                __recordTouch(event.getHistoricalX(i), event.getHistoricalY(i));
+                                break;
+                            }
                         }
-                    } catch (Exception e) {
-                        // do nothing
                     }
                 }
                 return true;
             }
         });
+        _colorPickerImageView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            /**
+             * Called when the layout bounds of the color picker image view changes due to layout
+             * processing, i.e. the rasterized color picker image is recreated (unless it is up to
+             * date) once the layout pass has been completed. If the placeholder has been laid out
+             * the color picker image is decoded at the width of the placeholder and, if the color
+             * picker image view has been clamped to a width less than the width of the decoded
+             * color picker image, the color picker image is decoded again (at the clamped width)
+             * the next time the alert dialog is shown.
+             */
+            @Override
+            public void onLayoutChange(View view, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                if (right - left != oldRight - oldLeft || bottom - top != oldBottom - oldTop) {
+                    __invalidateRasterizedImage();
+                } else if (!_isRasterized) {
+                    __scheduleRasterize();
+                }
+                if (_isPlaceholderShown && right - left > 0) {
+                    _isPlaceholderShown = false;
+                    _availableWidth = right - left;
+                    __decodeColorPickerImage();
+                } else if (!_isColorWheel && _colorPickerBitmap != null && right - left > 0 && right - left < _colorPickerBitmap.getWidth()) {
+                    _availableWidth = right - left;
+                    _isDecoded = false;
+                }
+            }
+        });
         builder.setView(layout).setCancelable(false);
         builder.setPositiveButton(R.string.ok, new DialogInterface.OnClickListener() {
             /**
@@ -104,9 +352,12 @@ public class ColorPickerDialog {
              */
             @Override
             public void onClick(@NonNull DialogInterface dialog, int id) {
-                if (Color.alpha(selectedColor[0]) > 0) {
-                    _selectedColor = selectedColor[0];
-                    _selectedListener.onChanged(selectedColor[0]);
+                // NOTE that a pending touch is applied immediately
+                _choreographer.removeFrameCallback(_frameCallback);
+                __applyTouch();
+                if (Color.alpha(_pickedColor) > 0) {
+                    _selectedColor = _pickedColor;
+                    _selectedListener.onChanged(_pickedColor);
                     dialog.cancel();
                 }
             }
@@ -126,10 +377,58 @@ public class ColorPickerDialog {
         _alertDialog = builder.create();
     }
 
+    /**
+     * Returns the dialog shared by all clients running in the supplied context, which is created
+     * the first time it is requested. The shared dialog is reconfigured by each client before it
+     * is shown and it is released by {@link #release}.
+     *
+     * @param context  the context in which the dialog is displayed
+     * @param listener a selected color change listener, which replaces the current listener
+     *
+     * @return the shared dialog
+     */
+    public static ColorPickerDialog getSharedInstance(@NonNull Context context, @NonNull OnSelectedListener listener) {
+        WeakReference<ColorPickerDialog> reference = SHARED_DIALOG_MAP.get(context);
+        ColorPickerDialog dialog = reference != null ? reference.get() : null;
+        if (dialog == null) {
+            SHARED_DIALOG_MAP.put(context, new WeakReference<>(dialog = new ColorPickerDialog(context, listener)));
+        } else {
+            dialog._selectedListener = listener;
+        }
+        dialog._clientListenerSet.add(listener);
+        return dialog;
+    }
+
+    /**
+     * Releases this dialog for the client of the supplied listener, i.e. the alert dialog is
+     * dismissed if the client is the latest client, and this dialog is removed from the shared
+     * dialogs when its last client has released it (regardless of the order of the releases).
+     *
+     * @param listener a selected color change listener
+     */
+    public void release(@NonNull OnSelectedListener listener) {
+        WeakReference<ColorPickerDialog> reference;
+        _clientListenerSet.remove(listener);
+        if (_selectedListener == listener || _clientListenerSet.isEmpty()) {
+            _choreographer.removeFrameCallback(_frameCallback);
+            _isFramePending = false;
+            _alertDialog.dismiss();
+        }
+        if (_clientListenerSet.isEmpty() && (reference = SHARED_DIALOG_MAP.get(_context)) != null && reference.get() == this) {
+            SHARED_DIALOG_MAP.remove(_context);
+        }
+    }
+
     /**
      * Shows the alert dialog.
      */
     public void show() {
+        _choreographer.removeFrameCallback(_frameCallback);
+        _isFramePending = false;
+        _pickedColor = Color.TRANSPARENT;
+        if (!_isColorWheel && !_isDecoded) {
+            __decodeColorPickerImage();
+        }
         if (Color.alpha(_selectedColor) > 0) {
             ((GradientDrawable) _selectedColorImageView.getDrawable()).setColor(_selectedColor);
         }
@@ -137,12 +436,71 @@ public class ColorPickerDialog {
     }
 
     /**
-     * Sets the color picker image in the alert dialog.
+     * Returns the number of bytes used by the decoded color picker image.
+     *
+     * @return the number of bytes, or 0 if no color picker image has been decoded
+     */
+    public int getColorPickerImageByteCount() {
+        return _colorPickerBitmap != null ? _colorPickerBitmap.getByteCount() : 0;
+    }
+
+    /**
+     * Sets the color picker image in the alert dialog. NOTE that the image is decoded, at (at most)
+     * the size at which it is displayed, on a background thread when the alert dialog is shown.
      *
      * @param id a resource id of an image
      */
     public void setColorPickerImage(@DrawableRes int id) {
-        _colorPickerImageView.setImageResource(id);
+        // NOTE that the decoded and rasterized color picker image is kept if the image is unchanged
+        if (id != _colorPickerImageId) {
+            _colorPickerImageId = id;
+            _availableWidth = 0;
+            _isDecoded = false;
+            __discardDecode();
+        }
+        if (_isColorWheel) {
+            _isColorWheel = false;
+            if (_isDecoded && _colorPickerBitmap != null) {
+                _colorPickerImageView.setImageBitmap(_colorPickerBitmap);
+                __invalidateRasterizedImage();
+            } else if (_isDecoded) {
+                _colorPickerImageView.setImageResource(_colorPickerImageId);
+                __invalidateRasterizedImage();
+            }
+        }
+    }
+
+    /**
+     * Sets the color picker image in the alert dialog to an "analytic" color wheel, i.e. the
+     * selected color is computed from the polar coordinates of a touch relative to the centre of
+     * the wheel instead of being read from the pixels of an image.
+     */
+    public void setColorWheel() {
+        if (_colorWheelDrawable == null) {
+            _colorWheelDrawable = new ColorWheelDrawable(_colorPickerImageView.getResources().getDimensionPixelSize(R.dimen.color_picker_wheel_diameter));
+        }
+        _colorPickerImageView.setImageDrawable(_colorWheelDrawable);
+        _isColorWheel = true;
+        // NOTE that a decode in progress is discarded (and the image is decoded again when needed)
+        if (_isDecodePending || _isPlaceholderShown) {
+            __discardDecode();
+            _isDecoded = false;
+        }
+    }
+
+    /**
+     * Sets the radius of the square around a touch whose mean color is picked in the color picker
+     * image. NOTE that the radius isn't used by the "analytic" color wheel.
+     *
+     * @param radius a radius (in pixels), or 0 if the color of the single pixel under the touch
+     *               should be picked
+     */
+    public void setSampleRadius(int radius) {
+        _sampleRadius = Math.max(radius, 0);
+        // NOTE that the summed-area tables are built (off the touch path) when first needed
+        if (_sampleRadius > 0 && _isRasterized && !_isSummed) {
+            __scheduleRasterize();
+        }
     }
 
     /**
@@ -187,16 +545,312 @@ public class ColorPickerDialog {
     }
 
     /**
-     * Creates a bitmap from a view.
+     * Returns the number of touch events that have been coalesced, i.e. superseded by a later touch
+     * event before the selected color image was updated.
+     *
+     * @return the number of coalesced touch events
+     */
+    public long getCoalescedEventCount() {
+        return _coalescedEventCount;
+    }
+
+    /**
+     * Records the position of a touch inside the color picker image and schedules a frame callback
+     * applying it unless one is already pending.
+     *
+     * @param x a horizontal position (in pixels) in the color picker image view
+     * @param y a vertical position (in pixels) in the color picker image view
+     */
+    private void __recordTouch(float x, float y) {
+        _touchX = x;
+        _touchY = y;
+        if (_isFramePending) {
+            _coalescedEventCount++;
+        } else {
+            _isFramePending = true;
+            _choreographer.postFrameCallback(_frameCallback);
+        }
+    }
+
+    /**
+     * Applies the latest recorded touch, if any, i.e. updates the picked color and the selected
+     * color image.
+     */
+    private void __applyTouch() {
+        int color;
+        if (_isFramePending) {
+            _isFramePending = false;
+            // NOTE that the color picker image may have changed since the touch was recorded
+            if (__isInside(_touchX, _touchY)) {
+                _pickedColor = color = __getColor(_touchX, _touchY);
+                if (Color.alpha(color) > 0) {
+                    ((GradientDrawable) _selectedColorImageView.getDrawable()).setColor(color);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the color picker image on a background thread at (at most) the width available to
+     * the color picker image view, i.e. a large image is downsampled instead of being decoded at
+     * its native resolution. Until the color picker image view has been laid out, i.e. until the
+     * available width is known, a transparent placeholder with the native size of the image is
+     * shown, and the image is decoded when the placeholder has been laid out (see the layout change
+     * listener). The image is decoded into a new bitmap, i.e. the bitmap currently displayed (if
+     * any) is kept until it is replaced. The ARGB_8888 configuration is used since RGB_565 would
+     * cause banding in the color gradients (and drop the transparency) and hardware bitmaps can't
+     * be rasterized into the "pixel array". If the image isn't a bitmap (e.g. an "xml drawable") or
+     * it can't be decoded it is set as it is.
+     */
+    private void __decodeColorPickerImage() {
+        int decodeCount = ++_decodeCount, imageId = _colorPickerImageId, availableWidth = _availableWidth;
+        Resources resources = _colorPickerImageView.getResources();
+        _isDecoded = _isDecodePending = true;
+        _isPlaceholderShown = false;
+        DECODE_EXECUTOR.execute(new Runnable() {
+            /**
+             * Decodes the color picker image (or only its size) and sets it on the UI thread.
+             */
+            @Override
+            public void run() {
+                int width, height, targetWidth;
+                Bitmap bitmap = null;
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeResource(resources, imageId, options);
+                if ((width = options.outWidth) > 0 && (height = options.outHeight) > 0 && availableWidth > 0) {
+                    targetWidth = Math.max(Math.min(availableWidth, width), 1);
+                    options.inJustDecodeBounds = false;
+                    options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                    options.inSampleSize = 1;
+                    while (width / (options.inSampleSize * 2) >= targetWidth) {
+                        options.inSampleSize *= 2;
+                    }
+                    // NOTE that the sampled image is scaled to the exact target width
+                    options.inScaled = true;
+                    options.inDensity = width / options.inSampleSize;
+                    options.inTargetDensity = targetWidth;
+                    // NOTE that the density is removed so that the bitmap is displayed pixel for
+                    // pixel, and that the image is set as it is if it can't be decoded
+                    if ((bitmap = BitmapFactory.decodeResource(resources, imageId, options)) != null) {
+                        bitmap.setDensity(Bitmap.DENSITY_NONE);
+                    } else {
+                        width = height = 0;
+                    }
+                }
+                __postDecodedImage(decodeCount, width, height, bitmap);
+            }
+        });
+    }
+
+    /**
+     * Sets the result of a decode of the color picker image on the UI thread unless the decode
+     * has been superseded by a later one.
+     *
+     * @param decodeCount the number of the decode
+     * @param width       the native width of the color picker image, or a non-positive value if
+     *                    the image isn't a bitmap or it couldn't be decoded
+     * @param height      the native height of the color picker image
+     * @param bitmap      the decoded color picker image, or null if only its size was decoded
+     */
+    private void __postDecodedImage(int decodeCount, int width, int height, Bitmap bitmap) {
+        _handler.post(new Runnable() {
+            /**
+             * Sets the decoded color picker image, its placeholder or the image resource.
+             */
+            @Override
+            public void run() {
+                ShapeDrawable placeholder;
+                if (decodeCount != _decodeCount || _isColorWheel) {
+                    return;
+                }
+                _isDecodePending = false;
+                if (width <= 0 || height <= 0) {
+                    _colorPickerBitmap = null;
+                    _colorPickerImageView.setImageResource(_colorPickerImageId);
+                } else if (bitmap == null) {
+                    placeholder = new ShapeDrawable();
+                    placeholder.setIntrinsicWidth(width);
+                    placeholder.setIntrinsicHeight(height);
+                    placeholder.getPaint().setColor(Color.TRANSPARENT);
+                    _colorPickerImageView.setImageDrawable(placeholder);
+                    _isPlaceholderShown = true;
+                } else {
+                    _colorPickerBitmap = bitmap;
+                    _colorPickerImageView.setImageBitmap(bitmap);
+                }
+                __invalidateRasterizedImage();
+            }
+        });
+    }
+
+    /**
+     * Discards the result of the decode of the color picker image in progress, if any, and its
+     * placeholder.
+     */
+    private void __discardDecode() {
+        _decodeCount++;
+        _isDecodePending = _isPlaceholderShown = false;
+    }
+
+    /**
+     * Tells whether or not a position is inside the color picker image. NOTE that a position is
+     * rejected until the color picker image has been rasterized, i.e. nothing is rasterized on the
+     * touch path.
+     *
+     * @param x a horizontal position (in pixels) in the color picker image view
+     * @param y a vertical position (in pixels) in the color picker image view
+     *
+     * @return true if the position is inside the color picker image, false otherwise
+     */
+    private boolean __isInside(float x, float y) {
+        float dx, dy, radius;
+        if (_isColorWheel) {
+            dx = x - _colorPickerImageView.getWidth() / 2f;
+            dy = y - _colorPickerImageView.getHeight() / 2f;
+            radius = Math.min(_colorPickerImageView.getWidth(), _colorPickerImageView.getHeight()) / 2f;
+            return dx * dx + dy * dy <= radius * radius;
+        }
+        return _isRasterized && x >= 0 && x < _pixelWidth && y >= 0 && y < _pixelHeight;
+    }
+
+    /**
+     * Returns the color at a position inside the color picker image (see {@link #__isInside}).
      *
-     * @param view the view from which the bitmap is created
+     * @param x a horizontal position (in pixels) in the color picker image view
+     * @param y a vertical position (in pixels) in the color picker image view
      *
-     * @return a bitmap
+     * @return the color at the position
      */
-    private Bitmap __getBitmapFromView(@NonNull View view) {
-        Bitmap bitmap = Bitmap.createBitmap(view.getWidth(), view.getHeight(), Bitmap.Config.ARGB_8888);
-        view.draw(new Canvas(bitmap));
-        return bitmap;
+    private int __getColor(float x, float y) {
+        if (_isColorWheel) {
+            return ColorWheelDrawable.getColor(x - _colorPickerImageView.getWidth() / 2f, y - _colorPickerImageView.getHeight() / 2f, Math.min(_colorPickerImageView.getWidth(), _colorPickerImageView.getHeight()) / 2f, _hsvArray);
+        }
+        if (_isSummed && _sampleRadius > 0) {
+            return __getMeanColor((int) x, (int) y);
+        }
+        return _pixelArray[(int) y * _pixelWidth + (int) x];
+    }
+
+    /**
+     * Returns the mean color of the square, with the "sample radius" as half its side, around a
+     * position in the color picker image by means of the summed-area tables (i.e. in constant
+     * time). The square is clipped at the edges of the color picker image.
+     *
+     * @param x a horizontal position (in pixels) in the color picker image
+     * @param y a vertical position (in pixels) in the color picker image
+     *
+     * @return the mean color
+     */
+    private int __getMeanColor(int x, int y) {
+        int left = Math.max(x - _sampleRadius, 0), top = Math.max(y - _sampleRadius, 0);
+        int right = Math.min(x + _sampleRadius, _pixelWidth - 1) + 1, bottom = Math.min(y + _sampleRadius, _pixelHeight - 1) + 1;
+        int topLeft = top * (_pixelWidth + 1) + left, topRight = top * (_pixelWidth + 1) + right;
+        int bottomLeft = bottom * (_pixelWidth + 1) + left, bottomRight = bottom * (_pixelWidth + 1) + right;
+        long alphaSum = _alphaSumArray[bottomRight] - _alphaSumArray[topRight] - _alphaSumArray[bottomLeft] + _alphaSumArray[topLeft];
+        long redSum, greenSum, blueSum;
+        int count;
+        if (alphaSum == 0) {
+            return Color.TRANSPARENT;
+        }
+        redSum = _redSumArray[bottomRight] - _redSumArray[topRight] - _redSumArray[bottomLeft] + _redSumArray[topLeft];
+        greenSum = _greenSumArray[bottomRight] - _greenSumArray[topRight] - _greenSumArray[bottomLeft] + _greenSumArray[topLeft];
+        blueSum = _blueSumArray[bottomRight] - _blueSumArray[topRight] - _blueSumArray[bottomLeft] + _blueSumArray[topLeft];
+        count = (right - left) * (bottom - top);
+        // NOTE that the premultiplied channel sums are "unpremultiplied" by the alpha sum
+        return Color.argb((int) ((alphaSum + count / 2) / count), __unpremultiply(redSum, alphaSum), __unpremultiply(greenSum, alphaSum), __unpremultiply(blueSum, alphaSum));
+    }
+
+    /**
+     * Converts a sum of alpha-premultiplied channel values to a mean channel value.
+     *
+     * @param channelSum a sum of alpha-premultiplied channel values
+     * @param alphaSum   the corresponding (non-zero) sum of alpha values
+     *
+     * @return a channel value between 0 and 255 (inclusive)
+     */
+    private static int __unpremultiply(long channelSum, long alphaSum) {
+        return (int) Math.min((channelSum * 255 + alphaSum / 2) / alphaSum, 255);
+    }
+
+    /**
+     * Builds the summed-area tables from the "pixel array". NOTE that the tables are reused if the
+     * size of the color picker image is unchanged.
+     */
+    private void __buildSummedAreaTables() {
+        int stride = _pixelWidth + 1, size = stride * (_pixelHeight + 1), pixel, alpha, index;
+        if (_alphaSumArray == null || _alphaSumArray.length != size) {
+            _alphaSumArray = new long[size];
+            _redSumArray = new long[size];
+            _greenSumArray = new long[size];
+            _blueSumArray = new long[size];
+        }
+        // NOTE that the first row and the first column are (and remain) zero
+        for (int y = 0; y < _pixelHeight; y++) {
+            for (int x = 0; x < _pixelWidth; x++) {
+                pixel = _pixelArray[y * _pixelWidth + x];
+                alpha = Color.alpha(pixel);
+                index = (y + 1) * stride + x + 1;
+                _alphaSumArray[index] = alpha + _alphaSumArray[index - 1] + _alphaSumArray[index - stride] - _alphaSumArray[index - stride - 1];
+                _redSumArray[index] = (Color.red(pixel) * alpha + 127) / 255 + _redSumArray[index - 1] + _redSumArray[index - stride] - _redSumArray[index - stride - 1];
+                _greenSumArray[index] = (Color.green(pixel) * alpha + 127) / 255 + _greenSumArray[index - 1] + _greenSumArray[index - stride] - _greenSumArray[index - stride - 1];
+                _blueSumArray[index] = (Color.blue(pixel) * alpha + 127) / 255 + _blueSumArray[index - 1] + _blueSumArray[index - stride] - _blueSumArray[index - stride - 1];
+            }
+        }
+        _isSummed = true;
+    }
+
+    /**
+     * Marks the rasterized color picker image as outdated, i.e. touches are rejected until it has
+     * been rasterized again, and schedules its rasterization.
+     */
+    private void __invalidateRasterizedImage() {
+        _isRasterized = false;
+        __scheduleRasterize();
+    }
+
+    /**
+     * Schedules the rasterization of the color picker image on the UI thread (replacing a pending
+     * one, if any) unless the color picker image is the "analytic" color wheel.
+     */
+    private void __scheduleRasterize() {
+        _colorPickerImageView.removeCallbacks(_rasterizeRunnable);
+        if (!_isColorWheel) {
+            _colorPickerImageView.post(_rasterizeRunnable);
+        }
+    }
+
+    /**
+     * Rasterizes the color picker image view into the "pixel array" unless it already has been
+     * rasterized since the color picker image or its size was last changed. NOTE that the "pixel
+     * array" is reused if the size of the color picker image view is unchanged and that the
+     * summed-area tables are (re)built if a mean color should be picked. Nothing is rasterized if
+     * the color picker image view hasn't been laid out yet.
+     */
+    private void __rasterizeColorPickerImage() {
+        int width, height;
+        Bitmap bitmap;
+        if (!_isRasterized) {
+            width = _colorPickerImageView.getWidth();
+            height = _colorPickerImageView.getHeight();
+            if (width <= 0 || height <= 0) {
+                return;
+            }
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            _colorPickerImageView.draw(new Canvas(bitmap));
+            if (_pixelArray == null || _pixelArray.length != width * height) {
+                _pixelArray = new int[width * height];
+            }
+            bitmap.getPixels(_pixelArray, 0, width, 0, 0, width, height);
+            bitmap.recycle();
+            _pixelWidth = width;
+            _pixelHeight = height;
+            _isRasterized = true;
+            _isSummed = false;
+        }
+        if (_sampleRadius > 0 && !_isSummed) {
+            __buildSummedAreaTables();
+        }
     }
 
     /**
@@ -18,6 +18,7 @@ package se.home.magnus.preference.colorpicker;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.graphics.Color;
 import android.graphics.drawable.GradientDrawable;
@@ -28,21 +29,41 @@ import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.preference.DialogPreference;
+import androidx.preference.PreferenceManager;
 import androidx.preference.PreferenceViewHolder;
 
 import se.home.magnus.preference.R;
 import se.home.magnus.preference.utility.Common;
+import se.home.magnus.preference.utility.PersistedValueObserver;
+import se.home.magnus.preference.utility.PreferenceDefaults;
 
 /**
  * A preference for selecting colors via a wrapped color picker dialog.
  */
-public class ColorPickerPreference extends DialogPreference implements ColorPickerDialog.OnSelectedListener {
+public class ColorPickerPreference extends DialogPreference implements ColorPickerDialog.OnSelectedListener, PreferenceDefaults.Resettable {
+
+    /**
+     * Tells whether or not the color picker image in the dialog is an "analytic" color wheel
+     * instead of the image given by "colorPickerId".
+     */
+    private final boolean _isColorWheel;
 
     /**
      * The default color.
      */
     private final int _defaultColor;
 
+    /**
+     * The (cached) color, which is read by "getColor" from any thread without locking.
+     */
+    private volatile int _color;
+
+    /**
+     * The radius (in pixels) of the square around a touch whose mean color is picked in the dialog,
+     * or 0 if the color of the single pixel under the touch is picked.
+     */
+    private final int _sampleRadius;
+
     /**
      * The resource id of the color picker image in the dialog.
      */
@@ -64,15 +85,39 @@ public class ColorPickerPreference extends DialogPreference implements ColorPick
     private final String _selectedText;
 
     /**
-     * The wrapped color picker dialog.
+     * The wrapped color picker dialog, which is shared by all color picker preferences running in
+     * the same context and is obtained the first time this preference is clicked.
      */
-    private final ColorPickerDialog _dialog;
+    private ColorPickerDialog _dialog;
 
     /**
-     * The selected color image view in this preference. This image view MUST be an "xml drawable"
-     * (see e.g. "square.xml").
+     * The observer keeping the (cached) color current when it is changed by someone else than this
+     * preference (e.g. when the shared preferences are edited directly). NOTE that it is wired into
+     * this preference as "PersistedValuePreference" does, which this preference can't extend since
+     * it extends "DialogPreference".
      */
-    private ImageView _selectedColorImageView;
+    private final PersistedValueObserver _persistedValueObserver = new PersistedValueObserver(this, new PersistedValueObserver.OnRefreshListener() {
+        /**
+         * Reads the persisted color again and rebinds the row of this preference if it has changed.
+         */
+        @Override
+        public void onRefresh() {
+            int value;
+            if ((value = getPersistedInt(_defaultColor)) != _color) {
+                _color = value;
+                notifyChanged();
+            }
+        }
+
+        /**
+         * Persists the color, which was changed while the shared preferences were being
+         * preloaded.
+         */
+        @Override
+        public void onPersist() {
+            persistInt(_color);
+        }
+    });
 
     /**
      * @param context      the context this view is running in, through which it can access the
@@ -85,10 +130,11 @@ public class ColorPickerPreference extends DialogPreference implements ColorPick
         // the solution below is chosen, since the "try (TypedArray ..." throws an exception
         TypedArray typedAttributeArray = context.obtainStyledAttributes(attributeSet, R.styleable.ColorPicker, 0, 0);
         try {
-            _dialog = new ColorPickerDialog(context, this);
             _imagePickerId = typedAttributeArray.getResourceId(R.styleable.ColorPicker_colorPickerId, -1);
             _imageSelectedId = typedAttributeArray.getResourceId(R.styleable.ColorPicker_colorSelectedId, -1);
-            _defaultColor = typedAttributeArray.getInt(R.styleable.ColorPicker_colorDefaultColor, R.color.color_primary);
+            _isColorWheel = typedAttributeArray.getBoolean(R.styleable.ColorPicker_colorWheel, false);
+            _sampleRadius = typedAttributeArray.getDimensionPixelSize(R.styleable.ColorPicker_colorSampleRadius, 0);
+            _color = _defaultColor = typedAttributeArray.getInt(R.styleable.ColorPicker_colorDefaultColor, R.color.color_primary);
             if ((_dialogTitle = typedAttributeArray.getString(R.styleable.ColorPicker_colorTitle)) == null) {
                 throw new RuntimeException(getContext().getString(R.string.color_picker_mandatory_error, "colorTitle"));
             }
@@ -113,19 +159,12 @@ public class ColorPickerPreference extends DialogPreference implements ColorPick
     @Override
     public void onBindViewHolder(@NonNull PreferenceViewHolder preferenceViewHolder) {
         super.onBindViewHolder(preferenceViewHolder);
-        int color = getPersistedInt(_defaultColor);
-        // the next statement is crucial because, if the "preference view holder" isn't set
-        // to be NOT recyclable, all "float seek bar preference" instances will share the same
-        // "float seek bar" instance
-        preferenceViewHolder.setIsRecyclable(false);
-        _dialog.setColorPickerImage(_imagePickerId);
-        _dialog.setSelectedColorPickerImage(_imageSelectedId);
-        _dialog.setTitle(_dialogTitle);
-        _dialog.setSelectedText(_selectedText);
-        _dialog.setSelectedColor(color);
-        _selectedColorImageView = (ImageView) preferenceViewHolder.findViewById(R.id.selected_color);
-        _selectedColorImageView.setImageResource(_imageSelectedId);
-        ((GradientDrawable) _selectedColorImageView.getDrawable()).setColor(color);
+        // NOTE that the selected color image MUST be an "xml drawable" (see e.g. "square.xml"),
+        // which is mutated since the drawables loaded from the same resource share their state
+        // (i.e. their color) and the row may be recycled from another preference
+        ImageView selectedColorImageView = (ImageView) preferenceViewHolder.findViewById(R.id.selected_color);
+        selectedColorImageView.setImageResource(_imageSelectedId);
+        ((GradientDrawable) selectedColorImageView.getDrawable().mutate()).setColor(_color);
     }
 
     /**
@@ -143,9 +182,88 @@ public class ColorPickerPreference extends DialogPreference implements ColorPick
      */
     @Override
     protected void onClick() {
+        // NOTE that the shared dialog must be reconfigured since it may have been used by another
+        // color picker preference
+        _dialog = ColorPickerDialog.getSharedInstance(getContext(), this);
+        if (_isColorWheel) {
+            _dialog.setColorWheel();
+        } else {
+            _dialog.setColorPickerImage(_imagePickerId);
+        }
+        _dialog.setSampleRadius(_sampleRadius);
+        _dialog.setSelectedColorPickerImage(_imageSelectedId);
+        _dialog.setTitle(_dialogTitle);
+        _dialog.setSelectedText(_selectedText);
+        _dialog.setSelectedColor(_color);
         _dialog.show();
     }
 
+    /**
+     * Sets the initial color of this preference.
+     *
+     * @param defaultValue the default value for the preference if set, otherwise null
+     */
+    @Override
+    protected void onSetInitialValue(@Nullable Object defaultValue) {
+        _color = getPersistedInt(_defaultColor);
+    }
+
+    /**
+     * See "PersistedValuePreference.onAttachedToHierarchy".
+     *
+     * @param preferenceManager the preference manager of the hierarchy
+     */
+    @Override
+    protected void onAttachedToHierarchy(@NonNull PreferenceManager preferenceManager) {
+        _persistedValueObserver.onAttachedToHierarchy(preferenceManager);
+        super.onAttachedToHierarchy(preferenceManager);
+    }
+
+    /**
+     * See "PersistedValuePreference.shouldPersist".
+     *
+     * @return true if the value is read and written, otherwise false
+     */
+    @Override
+    protected boolean shouldPersist() {
+        return super.shouldPersist() && !_persistedValueObserver.isLoading();
+    }
+
+    /**
+     * See "PersistedValuePreference.persistInt".
+     *
+     * @param value the color
+     *
+     * @return true if the color is persisted, otherwise false
+     */
+    @Override
+    protected boolean persistInt(int value) {
+        return _persistedValueObserver.onPersisted(super.persistInt(value));
+    }
+
+    /**
+     * See "PersistedValuePreference.onAttached".
+     */
+    @Override
+    public void onAttached() {
+        super.onAttached();
+        _persistedValueObserver.onAttached();
+    }
+
+    /**
+     * See "PersistedValuePreference.onDetached". NOTE that this preference also releases the shared
+     * dialog (which is discarded when all its users have released it).
+     */
+    @Override
+    public void onDetached() {
+        super.onDetached();
+        _persistedValueObserver.onDetached();
+        if (_dialog != null) {
+            _dialog.release(this);
+            _dialog = null;
+        }
+    }
+
     /**
      * Sets the default color of this preference.
      */
@@ -154,26 +272,45 @@ public class ColorPickerPreference extends DialogPreference implements ColorPick
     }
 
     /**
-     * Returns the color of this preference.
+     * Resets this preference to its default color and rebinds its row (see
+     * "PreferenceDefaults.resetAll").
+     *
+     * @param editor an editor of the shared preferences or null if there isn't any editor
+     */
+    @Override
+    public void resetDefault(@Nullable SharedPreferences.Editor editor) {
+        if (Color.alpha(_defaultColor) > 0) {
+            _color = _defaultColor;
+            if (PreferenceDefaults.isEdited(this, editor)) {
+                editor.putInt(getKey(), _color);
+            } else {
+                persistInt(_color);
+            }
+            notifyChanged();
+        }
+    }
+
+    /**
+     * Returns the color of this preference. NOTE that the color is the default color while the
+     * shared preferences are being preloaded (see "PersistedValueObserver"), unless it has been
+     * changed in the meantime.
      *
      * return the color of this preference
      */
     public @ColorInt int getColor() {
-        return getPersistedInt(_defaultColor);
+        return _color;
     }
 
     /**
-     * Sets the current color and selected color.
+     * Sets the current color and selected color (by rebinding the row of this preference, if any).
      *
      * @param color the current
      */
     private void __setColor(@ColorInt int color) {
-        if (_selectedColorImageView != null) {
-            if (Color.alpha(color) > 0) {
-                _dialog.setSelectedColor(color);
-                ((GradientDrawable) _selectedColorImageView.getDrawable()).setColor(color);
-                persistInt(color);
-            }
+        if (Color.alpha(color) > 0) {
+            _color = color;
+            persistInt(color);
+            notifyChanged();
         }
     }
 
@@ -0,0 +1,146 @@
+package se.home.magnus.preference.colorpicker;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.RadialGradient;
+import android.graphics.Rect;
+import android.graphics.Shader;
+import android.graphics.SweepGradient;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * This class is a drawable displaying an "analytic" HSV color wheel, i.e. the hue is given by the
+ * angle (clockwise from the positive x-axis) and the saturation by the distance from the centre of
+ * the wheel, while the value (brightness) is always at its maximum. The wheel is drawn by means of a
+ * sweep gradient (the hue) overlaid with a radial gradient (the saturation) which makes it
+ * resolution-independent.
+ */
+class ColorWheelDrawable extends Drawable {
+
+    /**
+     * The colors of the hue sweep, i.e. the hues 0, 60, 120, 180, 240, 300 and 360 degrees.
+     */
+    private static final int[] HUE_COLOR_ARRAY = {Color.RED, Color.YELLOW, Color.GREEN, Color.CYAN, Color.BLUE, Color.MAGENTA, Color.RED};
+
+    /**
+     * A fully transparent white color, NOTE that {@link Color#TRANSPARENT} can't be used as the
+     * outer color of the saturation gradient since it would interpolate towards black.
+     */
+    private static final int TRANSPARENT_WHITE = 0x00FFFFFF;
+
+    /**
+     * The diameter (in pixels) of this color wheel which is used as its intrinsic width and height.
+     */
+    private final int _diameter;
+
+    /**
+     * The paint drawing the hue of this color wheel.
+     */
+    private final Paint _huePaint;
+
+    /**
+     * The paint drawing the saturation of this color wheel.
+     */
+    private final Paint _saturationPaint;
+
+    /**
+     * @param diameter the intrinsic diameter (in pixels) of this color wheel
+     */
+    ColorWheelDrawable(int diameter) {
+        _diameter = diameter;
+        _huePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        _saturationPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    }
+
+    /**
+     * Computes the color at a position relative to the centre of a color wheel.
+     *
+     * @param dx       the horizontal distance (in pixels) from the centre of the color wheel
+     * @param dy       the vertical distance (in pixels) from the centre of the color wheel
+     * @param radius   the radius (in pixels) of the color wheel
+     * @param hsvArray an array used to hold the hue, saturation and value while computing the color
+     *                 (this avoids an allocation per call)
+     *
+     * @return the color at the position or {@link Color#TRANSPARENT} if the position is outside the
+     *         color wheel
+     */
+    static int getColor(float dx, float dy, float radius, @NonNull float[] hsvArray) {
+        float distance = (float) Math.hypot(dx, dy), hue;
+        if (radius <= 0 || distance > radius) {
+            return Color.TRANSPARENT;
+        }
+        hue = (float) Math.toDegrees(Math.atan2(dy, dx));
+        hsvArray[0] = hue < 0 ? hue + 360 : hue;
+        hsvArray[1] = distance / radius;
+        hsvArray[2] = 1;
+        return Color.HSVToColor(hsvArray);
+    }
+
+    /**
+     * Draws this color wheel centred in its bounds.
+     *
+     * @param canvas the canvas to draw into
+     */
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        Rect bounds = getBounds();
+        float radius = Math.min(bounds.width(), bounds.height()) / 2f;
+        if (radius > 0) {
+            canvas.drawCircle(bounds.exactCenterX(), bounds.exactCenterY(), radius, _huePaint);
+            canvas.drawCircle(bounds.exactCenterX(), bounds.exactCenterY(), radius, _saturationPaint);
+        }
+    }
+
+    /**
+     * Recreates the gradients of this color wheel when its bounds change.
+     *
+     * @param bounds the new bounds of this color wheel
+     */
+    @Override
+    protected void onBoundsChange(@NonNull Rect bounds) {
+        float radius = Math.min(bounds.width(), bounds.height()) / 2f;
+        if (radius > 0) {
+            _huePaint.setShader(new SweepGradient(bounds.exactCenterX(), bounds.exactCenterY(), HUE_COLOR_ARRAY, null));
+            _saturationPaint.setShader(new RadialGradient(bounds.exactCenterX(), bounds.exactCenterY(), radius, Color.WHITE, TRANSPARENT_WHITE, Shader.TileMode.CLAMP));
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return _diameter;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return _diameter;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        _huePaint.setAlpha(alpha);
+        _saturationPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        _huePaint.setColorFilter(colorFilter);
+        _saturationPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    /**
+     * @noinspection deprecation
+     */
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+}
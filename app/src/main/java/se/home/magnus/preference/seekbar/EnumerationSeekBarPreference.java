@@ -18,17 +18,23 @@ package se.home.magnus.preference.seekbar;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.util.AttributeSet;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.preference.Preference;
 import androidx.preference.PreferenceViewHolder;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import se.home.magnus.preference.R;
+import se.home.magnus.preference.utility.AttributeConfigCache;
 import se.home.magnus.preference.utility.Common;
+import se.home.magnus.preference.utility.PersistedValuePreference;
+import se.home.magnus.preference.utility.PreferenceDefaults;
 
 /**
  * This class is a seek bar preference displaying string labels with associated string values. NOTE
@@ -36,7 +42,7 @@ import se.home.magnus.preference.utility.Common;
  * "i" is associated with the value with the same position index. To configure the seek bar of this
  * preference see "label_seek_bar_preference.xml".
  */
-public class EnumerationSeekBarPreference extends Preference implements LabelSeekBar.OnProgressListener {
+public class EnumerationSeekBarPreference extends PersistedValuePreference implements LabelSeekBar.OnProgressListener, PreferenceDefaults.Resettable {
 
     /**
      * The color of the seek bar of this preference.
@@ -64,9 +70,9 @@ public class EnumerationSeekBarPreference extends Preference implements LabelSee
     private final String _defaultValue;
 
     /**
-     * The seek bar of this preference.
+     * The (cached) current value, which is read by "getValue" from any thread without locking.
      */
-    private LabelSeekBar _labelSeekBar;
+    private volatile String _value;
 
     /**
      * The values of the "discontinuous choices" of the seek bar of this preference.
@@ -78,6 +84,11 @@ public class EnumerationSeekBarPreference extends Preference implements LabelSee
      */
     private final CharSequence[] _labelArray;
 
+    /**
+     * The position indices in the "value array" keyed by their values.
+     */
+    private final Map<String, Integer> _valueIndexMap;
+
     /**
      * @param context      the context this preference is running in, through which it can access
      *                     the current theme, resources, etc
@@ -89,26 +100,17 @@ public class EnumerationSeekBarPreference extends Preference implements LabelSee
      */
     public EnumerationSeekBarPreference(@NonNull Context context, @Nullable AttributeSet attributeSet) throws IllegalArgumentException {
         super(context, attributeSet, 0);
-        // the solution below is chosen, since the "try (TypedArray ..." throws an exception
-        TypedArray typedAttributeArray = context.obtainStyledAttributes(attributeSet, R.styleable.EnumerationSeekBar, 0, 0);
-        try {
-            _thumbColor = typedAttributeArray.getColor(R.styleable.EnumerationSeekBar_enumerationThumbColor, context.getColor(R.color.color_primary));
-            _color = typedAttributeArray.getColor(R.styleable.EnumerationSeekBar_enumerationColor, context.getColor(R.color.color_primary));
-            _diameter = typedAttributeArray.getInt(R.styleable.EnumerationSeekBar_enumerationDiameter, context.getResources().getInteger(R.integer.enumeration_seek_bar_ball_diameter_default_value));
-            _size = typedAttributeArray.getInt(R.styleable.EnumerationSeekBar_enumerationSize, context.getResources().getInteger(R.integer.enumeration_seek_bar_size_default_value));
-            if ((_defaultValue = typedAttributeArray.getString(R.styleable.EnumerationSeekBar_enumerationDefaultValue)) == null) {
-                throw new IllegalArgumentException(getContext().getString(R.string.enumeration_seek_bar_value_array_error));
-            }
-            if ((_valueArray = typedAttributeArray.getTextArray(R.styleable.EnumerationSeekBar_enumerationValues)) == null) {
-                throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_value_array_error));
-            }
-            _labelArray = typedAttributeArray.getTextArray(R.styleable.EnumerationSeekBar_enumerationLabels);
-            if (_valueArray.length != _labelArray.length) {
-                throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_value_label_array_error));
-            }
-        } finally {
-            typedAttributeArray.recycle();
-        }
+        // NOTE that the configuration is parsed (and validated) once per XML tag, resource
+        // configuration and theme (see "AttributeConfigCache")
+        Config config = AttributeConfigCache.get(Config.class, context, attributeSet, Config::new);
+        _color = config._color;
+        _thumbColor = config._thumbColor;
+        _diameter = config._diameter;
+        _size = config._size;
+        _value = _defaultValue = config._defaultValue;
+        _valueArray = config._valueArray;
+        _labelArray = config._labelArray;
+        _valueIndexMap = config._valueIndexMap;
     }
 
     /**
@@ -128,24 +130,11 @@ public class EnumerationSeekBarPreference extends Preference implements LabelSee
     @Override
     public void onBindViewHolder(@NonNull PreferenceViewHolder preferenceViewHolder) throws IllegalArgumentException {
         super.onBindViewHolder(preferenceViewHolder);
-        int index = -1;
-        String value = getPersistedString(_defaultValue);
-        // the next statement is crucial because, if the "preference view holder" isn't set
-        // to be NOT recyclable, all "enumeration seek bar preference" instances will share the same
-        // "enumeration seek bar" instance
-        preferenceViewHolder.setIsRecyclable(false);
-        _labelSeekBar = (LabelSeekBar) preferenceViewHolder.findViewById(R.id.seekbar);
-        _labelSeekBar.initialize(_labelArray, this, _thumbColor, _color, _size, _diameter);
-        for (int i = 0; i < _valueArray.length; i++) {
-            if (_valueArray[i].equals(value)) {
-                index = i;
-                break;
-            }
-        }
-        if (index < 0) {
-            throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_value_error));
-        }
-        _labelSeekBar.setValue(index);
+        // NOTE that the row may be recycled from another preference, i.e. all the state of the
+        // row is (re)bound and initializing the seek bar replaces its listener
+        LabelSeekBar labelSeekBar = (LabelSeekBar) preferenceViewHolder.findViewById(R.id.seekbar);
+        labelSeekBar.initialize(_labelArray, this, _thumbColor, _color, _size, _diameter);
+        labelSeekBar.setValue(__getIndex(_value));
     }
 
     /**
@@ -159,7 +148,8 @@ public class EnumerationSeekBarPreference extends Preference implements LabelSee
      */
     @SuppressWarnings("JavaDoc")
     public void onChanged(int value) throws IllegalArgumentException {
-        persistString((String) _valueArray[value]);
+        _value = (String) _valueArray[value];
+        persistString(_value);
     }
 
     /**
@@ -170,34 +160,64 @@ public class EnumerationSeekBarPreference extends Preference implements LabelSee
     }
 
     /**
-     * Returns the enumeration option, as a string, of this preference.
+     * Resets this preference to its default value and rebinds its row (see
+     * "PreferenceDefaults.resetAll").
+     *
+     * @param editor an editor of the shared preferences or null if there isn't any editor
+     */
+    @Override
+    public void resetDefault(@Nullable SharedPreferences.Editor editor) {
+        _value = _defaultValue;
+        if (PreferenceDefaults.isEdited(this, editor)) {
+            editor.putString(getKey(), _value);
+        } else {
+            persistString(_value);
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Returns the enumeration option, as a string, of this preference. NOTE that the enumeration
+     * option is the default one while the shared preferences are being preloaded (see
+     * "PersistedValueObserver"), unless it has been changed in the meantime.
      *
      * return the enumeration option, of this preference
      */
     public String getValue() {
-        return getPersistedString(_defaultValue);
+        return _value;
     }
 
     /**
-     * Sets the color of the seek bar of this preference.
+     * Sets the color of the seek bar of this preference (and rebinds the row of this preference,
+     * if any, if the color has changed).
      *
      * @param color a color
      */
     public void setColor(@ColorInt int color) {
-        _color = color;
+        if (color != _color) {
+            _color = color;
+            notifyChanged();
+        }
     }
 
     /**
-     * Sets the color of the thumb of the seek bar of this preference.
+     * Sets the color of the thumb of the seek bar of this preference (and rebinds the row of this
+     * preference, if any, if the color has changed).
      *
      * @param color a color
      */
     public void setThumbColor(@ColorInt int color) {
-        _thumbColor = color;
+        if (color != _thumbColor) {
+            _thumbColor = color;
+            notifyChanged();
+        }
     }
 
     /**
-     * Sets the initial value of this preference.
+     * Sets the initial value of this preference, i.e. only the (cached) current value. NOTE that
+     * the initial value is never persisted, since it would otherwise overwrite the persisted value
+     * with the default value if it is set while the shared preferences are being preloaded (see
+     * "PersistedValueObserver").
      *
      * @param defaultValue the default value for the preference if set, otherwise null
      */
@@ -206,30 +226,153 @@ public class EnumerationSeekBarPreference extends Preference implements LabelSee
         if (defaultValue == null) {
             defaultValue = _defaultValue;
         }
-        __setValue(getPersistedString(defaultValue.toString()));
+        _value = getPersistedString(defaultValue.toString());
     }
 
     /**
-     * Sets the current value (and implicitly the seek bar value).
+     * Reads the persisted current value again and rebinds the row of this preference if it has
+     * changed.
+     */
+    @Override
+    protected void onRefresh() {
+        String value;
+        if (!(value = getPersistedString(_defaultValue)).equals(_value)) {
+            _value = value;
+            notifyChanged();
+        }
+    }
+
+    /**
+     * Persists the current value, which was changed while the shared preferences were being
+     * preloaded.
+     */
+    @Override
+    protected void onPersist() {
+        persistString(_value);
+    }
+
+    /**
+     * Sets the current value (and implicitly the seek bar value by rebinding the row of this
+     * preference, if any).
      *
      * @param value the current value which must be an element in the "value array"
+     *
+     * @throws IllegalArgumentException
+     * @noinspection JavadocDeclaration, RedundantSuppression
      */
-    private void __setValue(@NonNull String value) {
-        int index;
-        if (_labelSeekBar != null) {
-            index = -1;
-            for (int i = 0; i < _valueArray.length; i++) {
-                if (_valueArray[i].equals(value)) {
-                    index = i;
-                    break;
+    private void __setValue(@NonNull String value) throws IllegalArgumentException {
+        // NOTE that the value is validated before it is persisted
+        __getIndex(value);
+        _value = value;
+        persistString(value);
+        notifyChanged();
+    }
+
+    /**
+     * Returns the position index of a value in the "value array".
+     *
+     * @param value a value which must be an element in the "value array"
+     *
+     * @return a position index in the "value array"
+     *
+     * @throws IllegalArgumentException
+     * @noinspection RedundantSuppression
+     */
+    @SuppressWarnings("JavaDoc")
+    private int __getIndex(@NonNull String value) throws IllegalArgumentException {
+        Integer index = _valueIndexMap.get(value);
+        if (index == null) {
+            throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_value_error));
+        }
+        return index;
+    }
+
+    /**
+     * This class is the immutable (and validated) configuration of an enumeration seek bar
+     * preference parsed from its XML attributes.
+     */
+    private static final class Config {
+
+        /**
+         * The color of the seek bar of the preference.
+         */
+        final int _color;
+
+        /**
+         * The color of the thumb of the seek bar of the preference.
+         */
+        final int _thumbColor;
+
+        /**
+         * The diameter (in pixels) of the thumb of the seek bar of the preference.
+         */
+        final int _diameter;
+
+        /**
+         * The height (in pixels) of the seek bar of the preference.
+         */
+        final int _size;
+
+        /**
+         * The default value of the seek bar which must be an element in the "value array".
+         */
+        final String _defaultValue;
+
+        /**
+         * The values of the "discontinuous choices" of the seek bar of the preference.
+         */
+        final CharSequence[] _valueArray;
+
+        /**
+         * The labels of the "discontinuous choices" of the seek bar of the preference.
+         */
+        final CharSequence[] _labelArray;
+
+        /**
+         * The position indices in the "value array" keyed by their values.
+         */
+        final Map<String, Integer> _valueIndexMap;
+
+        /**
+         * @param context      the context the preference is running in
+         * @param attributeSet the attributes of the XML tag that is inflating the preference,
+         *                     which may be null
+         *
+         * @throws IllegalArgumentException
+         * @noinspection resource, JavadocDeclaration, RedundantSuppression
+         */
+        Config(@NonNull Context context, @Nullable AttributeSet attributeSet) throws IllegalArgumentException {
+            // the solution below is chosen, since the "try (TypedArray ..." throws an exception
+            TypedArray typedAttributeArray = context.obtainStyledAttributes(attributeSet, R.styleable.EnumerationSeekBar, 0, 0);
+            try {
+                _thumbColor = typedAttributeArray.getColor(R.styleable.EnumerationSeekBar_enumerationThumbColor, context.getColor(R.color.color_primary));
+                _color = typedAttributeArray.getColor(R.styleable.EnumerationSeekBar_enumerationColor, context.getColor(R.color.color_primary));
+                _diameter = typedAttributeArray.getInt(R.styleable.EnumerationSeekBar_enumerationDiameter, context.getResources().getInteger(R.integer.enumeration_seek_bar_ball_diameter_default_value));
+                _size = typedAttributeArray.getInt(R.styleable.EnumerationSeekBar_enumerationSize, context.getResources().getInteger(R.integer.enumeration_seek_bar_size_default_value));
+                if ((_defaultValue = typedAttributeArray.getString(R.styleable.EnumerationSeekBar_enumerationDefaultValue)) == null) {
+                    throw new IllegalArgumentException(context.getString(R.string.enumeration_seek_bar_value_array_error));
                 }
+                if ((_valueArray = typedAttributeArray.getTextArray(R.styleable.EnumerationSeekBar_enumerationValues)) == null) {
+                    throw new IllegalArgumentException(context.getString(R.string.generic_seek_bar_value_array_error));
+                }
+                _labelArray = typedAttributeArray.getTextArray(R.styleable.EnumerationSeekBar_enumerationLabels);
+                if (_valueArray.length != _labelArray.length) {
+                    throw new IllegalArgumentException(context.getString(R.string.generic_seek_bar_value_label_array_error));
+                }
+                _valueIndexMap = new HashMap<>(Math.round(_valueArray.length / 0.75f) + 1);
+                for (int i = 0; i < _valueArray.length; i++) {
+                    if (_valueIndexMap.put(_valueArray[i].toString(), i) != null) {
+                        throw new IllegalArgumentException(context.getString(R.string.enumeration_seek_bar_duplicate_value_error, _valueArray[i]));
+                    }
+                }
+                if (!_valueIndexMap.containsKey(_defaultValue)) {
+                    throw new IllegalArgumentException(context.getString(R.string.generic_seek_bar_value_error));
+                }
+            } finally {
+                typedAttributeArray.recycle();
             }
-            if (index < 0) {
-                throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_value_error));
-            }
-            _labelSeekBar.setValue(index);
         }
-        persistString(value);
+
     }
 
 }
@@ -1,10 +1,7 @@
 package se.home.magnus.preference.seekbar;
 
 import android.content.Context;
-import android.graphics.drawable.GradientDrawable;
-import android.graphics.drawable.LayerDrawable;
-import android.graphics.drawable.ShapeDrawable;
-import android.graphics.drawable.shapes.OvalShape;
+import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.widget.LinearLayout;
 import android.widget.SeekBar;
@@ -12,7 +9,6 @@ import android.widget.SeekBar;
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.appcompat.widget.AppCompatSeekBar;
-import androidx.core.content.res.ResourcesCompat;
 
 import se.home.magnus.preference.R;
 
@@ -30,10 +26,24 @@ public class FloatSeekBar extends AppCompatSeekBar {
     private boolean _isSeekBarChangeListenerSet;
 
     /**
-     * Attribute controlling the amount to increment or decrement the seek bar value when the user
-     * moves the thumb.
+     * Tells whether or not the thumb and the track (progress drawable) of this seek bar are set.
      */
-    private float _valueIncrement;
+    private boolean _isDrawableSet;
+
+    /**
+     * The key of the (cached) thumb of this seek bar.
+     */
+    private long _thumbKey;
+
+    /**
+     * The key of the (cached) track (progress drawable) of this seek bar.
+     */
+    private long _trackKey;
+
+    /**
+     * The thumb radius (in pixels) currently added to the left and right margins of this seek bar.
+     */
+    private int _thumbRadius;
 
     /**
      * A "mandatory" seek bar change listener.
@@ -51,36 +61,28 @@ public class FloatSeekBar extends AppCompatSeekBar {
     @SuppressWarnings("JavaDoc")
     public FloatSeekBar(@NonNull Context context, @NonNull AttributeSet attributeSet) throws IllegalArgumentException {
         super(context, attributeSet);
-        LayerDrawable progress;
-        if ((progress = (LayerDrawable) ResourcesCompat.getDrawable(getResources(), R.drawable.float_seek_bar, null)) == null) {
-            throw new IllegalArgumentException(getContext().getString(R.string.float_seek_bar_constructor_error));
-        }
-        _isSeekBarChangeListenerSet = false;
-        _valueIncrement = 1;
-        for (int i = 0; i < progress.getNumberOfLayers(); i++) {
-            progress.setLayerHeight(i, 10);
-        }
+        _isSeekBarChangeListenerSet = _isDrawableSet = false;
+        _thumbRadius = 0;
         // NOTE that this float seek bar is listening on its "super class" returning integer values
-        // between 0 and 100 which is transformed to values between 0.0 and 1.0,
-        // and these values are forwarded to the listener of this float seek bar
+        // between 0 and the number of value increments (i.e. the values are quantized by
+        // construction) which are transformed to values between 0.0 and 1.0, and these values
+        // are forwarded to the listener of this float seek bar
         setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             /**
              * Notification that the value has changed. Clients can use the fromUser parameter
              * to distinguish user-initiated changes from those that occurred programmatically.
              *
              * @param seekBar               the SeekBar whose value has changed
-             * @param currentIntegerValue   the current value, this will be in the range 0 and 100
+             * @param currentIntegerValue   the current value, this will be in the range 0 and the
+             *                              number of value increments
              * @param fromUser              true if the value change was initiated by the user
              *
              * @throws IllegalArgumentException
              */
             @Override
             public void onProgressChanged(@NonNull SeekBar seekBar, int currentIntegerValue, boolean fromUser) throws IllegalArgumentException {
-                float newFloatValue;
                 if (_isSeekBarChangeListenerSet) {
-                    newFloatValue = Math.round((currentIntegerValue / 100f) / _valueIncrement) * _valueIncrement;
-                    setProgress(Math.round(newFloatValue * 100));
-                    _seekBarChangeListener.onProgressChanged(newFloatValue, fromUser);
+                    _seekBarChangeListener.onProgressChanged(currentIntegerValue, getMax(), fromUser);
                 } else {
                     throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_change_dependency_error));
                 }
@@ -122,7 +124,8 @@ public class FloatSeekBar extends AppCompatSeekBar {
      * Initializes this float seek bar.
      *
      * @param listener   a seek bar notification listener
-     * @param increment  a value increment which must be between 0.0 and 1.0 (inclusive)
+     * @param increment  a value increment which must be greater than 0.0 and not greater than 1.0,
+     *                   the progress range of the seek bar is sized to the number of increments
      * @param thumbColor a thumb color
      * @param color      a progress color
      * @param size       a thickness (height) of the seek bar (in pixels)
@@ -132,29 +135,55 @@ public class FloatSeekBar extends AppCompatSeekBar {
      */
     @SuppressWarnings("JavaDoc")
     public void initialize(@NonNull OnSeekBarChangeListener listener, float increment, @ColorInt int thumbColor, @ColorInt int color, int size, int diameter) throws IllegalArgumentException {
-        int integerValue = Math.round(increment * 100f), thumbRadius = Math.round(diameter / 2f);
-        ShapeDrawable thumb = new ShapeDrawable(new OvalShape());
-        LayerDrawable progress = (LayerDrawable) getProgressDrawable();
+        int thumbRadius = Math.round(diameter / 2f);
         LinearLayout.LayoutParams layoutParameters;
-        thumb.setIntrinsicWidth(diameter);
-        thumb.setIntrinsicHeight(diameter);
-        ((GradientDrawable) progress.findDrawableByLayerId(R.id.background)).setCornerRadius(size);
-        for (int i = 0; i < progress.getNumberOfLayers(); i++) {
-            progress.setLayerHeight(i, size);
-        }
-        layoutParameters = (LinearLayout.LayoutParams) getLayoutParams();
-        layoutParameters.leftMargin += thumbRadius;
-        layoutParameters.rightMargin += thumbRadius;
-        setLayoutParams(layoutParameters);
-        getProgressDrawable().setTint(color);
-        thumb.setTint(thumbColor);
-        setThumb(thumb);
-        if (integerValue < 0 || integerValue > 100) {
+        // NOTE that the increment is validated before this seek bar is changed in any way
+        if (!(increment > 0) || increment > 1) {
             throw new IllegalArgumentException(getContext().getString(R.string.float_seek_bar_set_value_error));
         }
+        // NOTE that only the difference to the thumb radius already added to the margins is added,
+        // since this seek bar may be initialized again (when it is recycled)
+        if (thumbRadius != _thumbRadius) {
+            layoutParameters = (LinearLayout.LayoutParams) getLayoutParams();
+            layoutParameters.leftMargin += thumbRadius - _thumbRadius;
+            layoutParameters.rightMargin += thumbRadius - _thumbRadius;
+            setLayoutParams(layoutParameters);
+            _thumbRadius = thumbRadius;
+        }
+        __setDrawables(thumbColor, color, size, diameter);
         _isSeekBarChangeListenerSet = true;
-        _valueIncrement = increment;
         _seekBarChangeListener = listener;
+        // NOTE that the maximum must be set after the listener since it may notify the listener
+        setMax(Math.max(Math.round(1 / increment), 1));
+    }
+
+    /**
+     * Sets the thumb and the track (progress drawable) of this seek bar as copies of cached
+     * drawables, unless they are already set with the same colors and dimensions.
+     *
+     * @param thumbColor a thumb color
+     * @param color      a progress color
+     * @param size       a thickness (height) of the seek bar (in pixels)
+     * @param diameter   a thumb diameter (in pixels)
+     *
+     * @throws IllegalArgumentException
+     * @noinspection JavadocDeclaration, RedundantSuppression
+     */
+    private void __setDrawables(@ColorInt int thumbColor, @ColorInt int color, int size, int diameter) throws IllegalArgumentException {
+        long thumbKey = SeekBarDrawableCache.getThumbKey(thumbColor, diameter), trackKey = SeekBarDrawableCache.getTrackKey(color, size);
+        Drawable track;
+        if (!_isDrawableSet || trackKey != _trackKey) {
+            if ((track = SeekBarDrawableCache.getTrack(getResources(), R.drawable.float_seek_bar, color, size)) == null) {
+                throw new IllegalArgumentException(getContext().getString(R.string.float_seek_bar_constructor_error));
+            }
+            setProgressDrawable(track);
+            _trackKey = trackKey;
+        }
+        if (!_isDrawableSet || thumbKey != _thumbKey) {
+            setThumb(SeekBarDrawableCache.getThumb(getResources(), thumbColor, diameter));
+            _thumbKey = thumbKey;
+        }
+        _isDrawableSet = true;
     }
 
     /**
@@ -166,8 +195,8 @@ public class FloatSeekBar extends AppCompatSeekBar {
      */
     @SuppressWarnings("JavaDoc")
     public void setValue(float value) throws IllegalArgumentException {
-        int integerValue = Math.round(value * 100f);
-        if (integerValue < 0 || integerValue > 100f) {
+        int integerValue = Math.round(value * getMax());
+        if (integerValue < 0 || integerValue > getMax()) {
             throw new IllegalArgumentException(getContext().getString(R.string.float_seek_bar_set_value_error));
         }
         setProgress(integerValue);
@@ -181,15 +210,19 @@ public class FloatSeekBar extends AppCompatSeekBar {
     public interface OnSeekBarChangeListener {
         /**
          * Notification that the value has changed. Clients can use the fromUser parameter to
-         * distinguish user-initiated changes from those that occurred programmatically.
+         * distinguish user-initiated changes from those that occurred programmatically. NOTE that
+         * the value is given as a number of increments, i.e. clients SHOULD compute their values
+         * from it instead of from the fraction "progress / maximum" to avoid rounding errors.
          *
-         * @param floatValue the new value of the FloatSeekBar
-         * @param fromUser   true if the value change was initiated by the user
+         * @param progress the new value of the FloatSeekBar as a number of increments, which is
+         *                 between 0 and the maximum (inclusive)
+         * @param maximum  the number of increments of the FloatSeekBar
+         * @param fromUser true if the value change was initiated by the user
          *
          * @throws IllegalArgumentException
          */
         @SuppressWarnings("JavaDoc")
-        void onProgressChanged(float floatValue, boolean fromUser) throws IllegalArgumentException;
+        void onProgressChanged(int progress, int maximum, boolean fromUser) throws IllegalArgumentException;
 
         /**
          * Notification that the user has started a touch gesture. Clients may want to use this to
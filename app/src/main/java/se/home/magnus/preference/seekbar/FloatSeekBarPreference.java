@@ -16,20 +16,26 @@
 
 package se.home.magnus.preference.seekbar;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.TypedArray;
+import android.os.SystemClock;
+import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.preference.Preference;
 import androidx.preference.PreferenceViewHolder;
 
+import se.home.magnus.preference.utility.AttributeConfigCache;
 import se.home.magnus.preference.utility.Common;
+import se.home.magnus.preference.utility.PersistedValuePreference;
+import se.home.magnus.preference.utility.PreferenceDefaults;
+import se.home.magnus.preference.utility.FixedDecimalFormatter;
 import se.home.magnus.preference.R;
 
 /**
@@ -49,14 +55,61 @@ import se.home.magnus.preference.R;
  * {@code title, summary, defaultValue, min, max}) can be set directly on the preference widget
  * layout.
  */
-public class FloatSeekBarPreference extends Preference {
+public class FloatSeekBarPreference extends PersistedValuePreference implements PreferenceDefaults.Resettable {
+
+    /**
+     * The persistence policy where the value is persisted when the user stops dragging.
+     */
+    private static final int PERSISTENCE_POLICY_ON_RELEASE = 0;
+
+    /**
+     * The persistence policy where the value is persisted at most once per persistence interval
+     * while the user drags (and when the user stops dragging).
+     */
+    private static final int PERSISTENCE_POLICY_THROTTLED = 1;
+
+    /**
+     * The persistence policy where the value is persisted every time it changes.
+     */
+    private static final int PERSISTENCE_POLICY_IMMEDIATE = 2;
 
     private boolean _trackingTouch;
 
+    /**
+     * Tells whether or not a value has been persisted by this preference, i.e. whether or not the
+     * "persisted value" is valid.
+     */
+    private boolean _isValuePersisted;
+
     // Whether to show the FloatSeekBar value TextView next to the bar
     private final boolean _showSeekBarValue;
 
-    private float _value;
+    /**
+     * The (cached) current value, which is read by "getValue" from any thread without locking.
+     */
+    private volatile float _value;
+
+    /**
+     * The latest value persisted by this preference, which is used to skip unchanged writes.
+     */
+    private float _persistedValue;
+
+    /**
+     * The persistence policy, i.e. when the value is persisted while the user drags (see
+     * "floatPersistencePolicy" in "attrs.xml").
+     */
+    private final int _persistencePolicy;
+
+    /**
+     * The minimum time (in milliseconds) between two writes while the user drags if the
+     * persistence policy is "throttled".
+     */
+    private final int _persistenceInterval;
+
+    /**
+     * The time (in milliseconds since boot) of the latest write.
+     */
+    private long _persistenceTime;
 
     /**
      * The color of the progress of the float seek bar.
@@ -87,26 +140,42 @@ public class FloatSeekBarPreference extends Preference {
     private final float _valueIncrement;
 
     /**
-     * A format string to show the number of decimals of the float seek bar value.
+     * A formatter showing the number of decimals of the float seek bar value without allocations.
      */
-    private final String _valueFormat;
+    private final FixedDecimalFormatter _valueFormatter;
 
-    private FloatSeekBar _floatSeekBar;
+    /**
+     * The width (in pixels) of the TextView label that displays the current value, i.e. the width
+     * of the widest possible formatted value, or 0 if it hasn't been measured yet.
+     */
+    private int _valueWidth;
 
-    private TextView _textView;
+    /**
+     * The text size (in pixels) of the TextView label the "value width" was measured with.
+     */
+    private float _valueTextSize;
+
+    /**
+     * The TextView label that displays the current value in the row this preference was latest
+     * bound to, or null if the value isn't displayed.
+     */
+    private TextView _valueView;
 
     /**
      * Listener reacting to the {@link FloatSeekBar} changing value by the user
      */
     private final FloatSeekBar.OnSeekBarChangeListener __mSeekBarChangeListener = new FloatSeekBar.OnSeekBarChangeListener() {
         @Override
-        public void onProgressChanged(float floatValue, boolean fromUser) throws IllegalArgumentException {
-            float seekBarValue = _minimumValue + (_maximumValue - _minimumValue) * floatValue;
+        public void onProgressChanged(int progress, int maximum, boolean fromUser) throws IllegalArgumentException {
+            // NOTE that the value is computed from the number of increments, i.e. it isn't scaled
+            // by a fraction whose rounding error would be persisted (e.g. 0.70000005)
+            float seekBarValue = progress >= maximum ? _maximumValue : _minimumValue + progress * _valueIncrement;
+            // We always want to update the text while the FloatSeekBar is being dragged, NOTE that
+            // the label belongs to the row this preference was latest bound to, since a recycled
+            // row is bound again and its float seek bar then notifies only the new preference
+            updateLabelValue(_valueView, seekBarValue);
             if (_trackingTouch) {
                 __setValueInternal(seekBarValue);
-            } else {
-                // We always want to update the text while the FloatSeekBar is being dragged
-                updateLabelValue(seekBarValue);
             }
         }
 
@@ -118,56 +187,28 @@ public class FloatSeekBarPreference extends Preference {
         @Override
         public void onStopTrackingTouch() {
             _trackingTouch = false;
+            // NOTE that the value may not have been persisted while the user dragged
+            __persistValue();
         }
     };
 
     public FloatSeekBarPreference(@NonNull Context context, @Nullable AttributeSet attributeSet) {
         super(context, attributeSet, 0);
-        float value, minimumValue, maximumValue, defaultValue, valueIncrement;
-        // the solution below is chosen, since the "try (TypedArray ..." throws an exception
-        TypedArray typedAttributeArray = context.obtainStyledAttributes(attributeSet, R.styleable.FloatSeekBar, 0, 0);
-        try {
-            minimumValue = typedAttributeArray.getFloat(R.styleable.FloatSeekBar_floatMinimumValue, 0);
-            maximumValue = typedAttributeArray.getFloat(R.styleable.FloatSeekBar_floatMaximumValue, 1);
-            if (maximumValue - minimumValue > 0) {
-                _minimumValue = minimumValue;
-                _maximumValue = maximumValue;
-            } else {
-                throw new IllegalArgumentException(getContext().getString(R.string.float_seek_bar_initiation_error));
-            }
-            // NOTE that the difference between the maximum and minimum values must be equally divisible by the value increment
-            valueIncrement = typedAttributeArray.getFloat(R.styleable.FloatSeekBar_floatValueIncrement, 0.05f);
-            if (valueIncrement > 0) {
-                value = (maximumValue - minimumValue) / valueIncrement;
-                if (Math.abs(value - Math.round(value)) < Common.FLOAT_EQUALITY_TOLERANCE) {
-                    _valueIncrement = valueIncrement;
-                } else {
-                    throw new IllegalArgumentException(getContext().getString(R.string.float_seek_bar_increment_error));
-                }
-            } else {
-                throw new IllegalArgumentException(getContext().getString(R.string.float_seek_bar_increment_error));
-            }
-            defaultValue = typedAttributeArray.getFloat(R.styleable.FloatSeekBar_floatDefaultValue, 0);
-            if (!(defaultValue < minimumValue) && !(defaultValue > maximumValue)) {
-                value = defaultValue / valueIncrement;
-                // NOTE that the difference between the default and minimum values must be equally divisible by the value increment
-                if (Math.abs(value - Math.round(value)) < Common.FLOAT_EQUALITY_TOLERANCE) {
-                    _value = _defaultValue = defaultValue;
-                } else {
-                    throw new IllegalArgumentException(getContext().getString(R.string.float_seek_bar_default_error));
-                }
-            } else {
-                throw new IllegalArgumentException(getContext().getString(R.string.float_seek_bar_default_error));
-            }
-            _showSeekBarValue = typedAttributeArray.getBoolean(R.styleable.FloatSeekBar_floatShowSeekBarValue, true);
-            _valueFormat = "%." + typedAttributeArray.getInt(R.styleable.FloatSeekBar_floatDecimalCount, context.getResources().getInteger(R.integer.float_seek_bar_decimal_count_default_value)) + "f";
-            _color = typedAttributeArray.getColor(R.styleable.FloatSeekBar_floatColor, context.getColor(R.color.color_primary));
-            _thumbColor = typedAttributeArray.getColor(R.styleable.FloatSeekBar_floatThumbColor, context.getColor(R.color.color_primary));
-            _diameter = typedAttributeArray.getInt(R.styleable.FloatSeekBar_floatDiameter, context.getResources().getInteger(R.integer.float_seek_bar_ball_diameter_default_value));
-            _size = typedAttributeArray.getInt(R.styleable.FloatSeekBar_floatSize, context.getResources().getInteger(R.integer.float_seek_bar_size_default_value));
-        } finally {
-            typedAttributeArray.recycle();
-        }
+        // NOTE that the configuration is parsed (and validated) once per XML tag, resource
+        // configuration and theme (see "AttributeConfigCache")
+        Config config = AttributeConfigCache.get(Config.class, context, attributeSet, Config::new);
+        _showSeekBarValue = config._showSeekBarValue;
+        _minimumValue = config._minimumValue;
+        _maximumValue = config._maximumValue;
+        _valueIncrement = config._valueIncrement;
+        _value = _defaultValue = config._defaultValue;
+        _valueFormatter = new FixedDecimalFormatter(config._decimalCount);
+        _color = config._color;
+        _thumbColor = config._thumbColor;
+        _diameter = config._diameter;
+        _size = config._size;
+        _persistencePolicy = config._persistencePolicy;
+        _persistenceInterval = config._persistenceInterval;
     }
 
     /**
@@ -179,46 +220,51 @@ public class FloatSeekBarPreference extends Preference {
      *                             these views will be recycled, so you should not hold a reference
      *                             to them after this method returns.
      */
-    @SuppressLint({"SetTextI18n", "DefaultLocale"})
     @Override
     public void onBindViewHolder(@NonNull PreferenceViewHolder preferenceViewHolder) {
         super.onBindViewHolder(preferenceViewHolder);
-        // the next statement is crucial because, if the "preference view holder" isn't set
-        // to be NOT recyclable, all "float seek bar preference" instances will share the same
-        // "float seek bar" instance
-        preferenceViewHolder.setIsRecyclable(false);
-        _floatSeekBar = (FloatSeekBar) preferenceViewHolder.findViewById(R.id.seekbar);
-        _textView = (TextView) preferenceViewHolder.findViewById(R.id.seekbar_value);
+        // NOTE that the row may be recycled from another preference, i.e. all the state of the
+        // row is (re)bound and initializing the float seek bar replaces its listener
+        FloatSeekBar floatSeekBar = (FloatSeekBar) preferenceViewHolder.findViewById(R.id.seekbar);
+        TextView textView = (TextView) preferenceViewHolder.findViewById(R.id.seekbar_value);
         // NOTE that this order of the "setter methods" of the float seek bar MUST be this
         if (_showSeekBarValue) {
-            _textView.setVisibility(View.VISIBLE);
+            textView.setVisibility(View.VISIBLE);
+            __pinValueWidth(textView);
         } else {
-            _textView.setVisibility(View.GONE);
-            _textView = null;
+            textView.setVisibility(View.GONE);
+            textView = null;
         }
-        _floatSeekBar.initialize(__mSeekBarChangeListener, _valueIncrement / (_maximumValue - _minimumValue), _thumbColor, _color, _size, _diameter);
-        if (_textView != null) {
-            _textView.setText(String.format(_valueFormat, _value));
-        }
-        _floatSeekBar.setValue((_value - _minimumValue) / (_maximumValue - _minimumValue));
+        _valueView = textView;
+        floatSeekBar.initialize(__mSeekBarChangeListener, _valueIncrement / (_maximumValue - _minimumValue), _thumbColor, _color, _size, _diameter);
+        updateLabelValue(textView, _value);
+        floatSeekBar.setValue((_value - _minimumValue) / (_maximumValue - _minimumValue));
     }
 
     /**
-     * Sets the color of the seek bar of this preference.
+     * Sets the color of the seek bar of this preference (and rebinds the row of this preference,
+     * if any, if the color has changed).
      *
      * @param color a color
      */
     public void setColor(@ColorInt int color) {
-        _color = color;
+        if (color != _color) {
+            _color = color;
+            notifyChanged();
+        }
     }
 
     /**
-     * Sets the color of the thumb of the seek bar of this preference.
+     * Sets the color of the thumb of the seek bar of this preference (and rebinds the row of this
+     * preference, if any, if the color has changed).
      *
      * @param color a color
      */
     public void setThumbColor(@ColorInt int color) {
-        _thumbColor = color;
+        if (color != _thumbColor) {
+            _thumbColor = color;
+            notifyChanged();
+        }
     }
 
     /**
@@ -229,20 +275,75 @@ public class FloatSeekBarPreference extends Preference {
     }
 
     /**
-     * Returns the value of this preference.
+     * Resets this preference to its default value and rebinds its row (see
+     * "PreferenceDefaults.resetAll").
+     *
+     * @param editor an editor of the shared preferences or null if there isn't any editor
+     */
+    @Override
+    public void resetDefault(@Nullable SharedPreferences.Editor editor) {
+        _value = _defaultValue;
+        if (PreferenceDefaults.isEdited(this, editor)) {
+            editor.putFloat(getKey(), _value);
+            _persistedValue = _value;
+            _isValuePersisted = true;
+        } else {
+            __persistValue();
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Returns the value of this preference. NOTE that the value is current even if it hasn't been
+     * persisted yet (see "floatPersistencePolicy"), and that it is the default value while the
+     * shared preferences are being preloaded (see "PersistedValueObserver"), unless it has been
+     * changed in the meantime.
      * <p>
      * return the value of this preference
      */
     public float getValue() {
-        return getPersistedFloat(_defaultValue);
+        return _value;
     }
 
+    /**
+     * Sets the initial value of this preference, i.e. only the (cached) current value (within the
+     * range of the seek bar). NOTE that the initial value is never persisted, since it would
+     * otherwise overwrite the persisted value with the default value if it is set while the shared
+     * preferences are being preloaded (see "PersistedValueObserver").
+     *
+     * @param defaultValue the default value for the preference if set, otherwise null
+     */
     @Override
     protected void onSetInitialValue(Object defaultValue) {
         if (defaultValue == null) {
             defaultValue = _defaultValue;
         }
-        __setValue(getPersistedFloat(Float.parseFloat(defaultValue.toString())));
+        _value = Math.min(Math.max(getPersistedFloat(Float.parseFloat(defaultValue.toString())), _minimumValue), _maximumValue);
+    }
+
+    /**
+     * Reads the persisted current value again and rebinds the row of this preference if it has
+     * changed.
+     */
+    @Override
+    protected void onRefresh() {
+        float value;
+        // NOTE that the value isn't refreshed while the user drags
+        if (!_trackingTouch && (value = getPersistedFloat(_defaultValue)) != _value) {
+            _value = _persistedValue = value;
+            _isValuePersisted = true;
+            notifyChanged();
+        }
+    }
+
+    /**
+     * Persists the current value, which was changed while the shared preferences were being
+     * preloaded.
+     */
+    @Override
+    protected void onPersist() {
+        // NOTE that the value wasn't persisted (see "__persistValue")
+        __persistValue();
     }
 
     private void __setValueInternal(float value) {
@@ -252,34 +353,224 @@ public class FloatSeekBarPreference extends Preference {
         if (value > _maximumValue) {
             value = _maximumValue;
         }
-        updateLabelValue(value);
-        persistFloat(value);
         _value = value;
+        // NOTE that the value is always persisted unless the user drags
+        if (!_trackingTouch || _persistencePolicy == PERSISTENCE_POLICY_IMMEDIATE || (_persistencePolicy == PERSISTENCE_POLICY_THROTTLED && SystemClock.uptimeMillis() - _persistenceTime >= _persistenceInterval)) {
+            __persistValue();
+        }
+    }
+
+    /**
+     * Persists the current value unless it is equal to the latest value persisted by this
+     * preference. NOTE that the value is only recorded as persisted if it is actually persisted
+     * (e.g. not if this preference isn't persistent or its shared preferences are being
+     * preloaded).
+     */
+    private void __persistValue() {
+        if ((!_isValuePersisted || _persistedValue != _value) && persistFloat(_value)) {
+            _persistedValue = _value;
+            _persistenceTime = SystemClock.uptimeMillis();
+            _isValuePersisted = true;
+        }
     }
 
     /**
-     * Sets the current value of the {@link FloatSeekBar}.
+     * Sets the current value of the {@link FloatSeekBar}, which is shown by rebinding the row of
+     * this preference (if any).
      *
      * @param seekBarValue The current value of the {@link FloatSeekBar}
      */
     private void __setValue(float seekBarValue) {
         __setValueInternal(seekBarValue);
-        if (_floatSeekBar != null) {
-            _floatSeekBar.setValue((_value - _minimumValue) / (_maximumValue - _minimumValue));
+        notifyChanged();
+    }
+
+    /**
+     * Pins the width of the TextView label that displays the current value to the width of the
+     * widest possible formatted value (given the minimum and maximum values and the number of
+     * decimals). Since the label is single-line (see "float_seek_bar_preference.xml") with a fixed
+     * width, later value updates only invalidate the text instead of requesting a layout pass of
+     * the whole preference. NOTE that the width is only measured once (per text size) and that a
+     * bind only sets it.
+     *
+     * @param textView the TextView label of the row being bound
+     */
+    private void __pinValueWidth(@NonNull TextView textView) {
+        float digitWidth = 0;
+        ViewGroup.LayoutParams layoutParameters = textView.getLayoutParams();
+        TextPaint paint = textView.getPaint();
+        if (_valueWidth == 0 || _valueTextSize != textView.getTextSize()) {
+            for (char digit = '0'; digit <= '9'; digit++) {
+                digitWidth = Math.max(digitWidth, paint.measureText(String.valueOf(digit)));
+            }
+            _valueWidth = (int) Math.ceil(Math.max(__getWidestTextWidth(paint, _minimumValue, digitWidth), __getWidestTextWidth(paint, _maximumValue, digitWidth))) + textView.getTotalPaddingLeft() + textView.getTotalPaddingRight();
+            _valueTextSize = textView.getTextSize();
+        }
+        if (layoutParameters.width != _valueWidth) {
+            layoutParameters.width = _valueWidth;
+            textView.setLayoutParams(layoutParameters);
+        }
+    }
+
+    /**
+     * Returns the width of a formatted value where all digits are assumed to be as wide as the
+     * widest digit, i.e. the widest width of any value with the same number of digits.
+     *
+     * @param paint      the paint of the TextView label
+     * @param value      a value
+     * @param digitWidth the width of the widest digit
+     *
+     * @return a width (in pixels)
+     */
+    private float __getWidestTextWidth(@NonNull TextPaint paint, float value, float digitWidth) {
+        float width = 0;
+        char[] buffer;
+        _valueFormatter.format(value);
+        buffer = _valueFormatter.getBuffer();
+        for (int i = _valueFormatter.getStart(); i < _valueFormatter.getStart() + _valueFormatter.getLength(); i++) {
+            width += Character.isDigit(buffer[i]) ? digitWidth : paint.measureText(buffer, i, 1);
         }
+        return width;
     }
 
     /**
      * Attempts to update the TextView label that displays the current value.
      *
-     * @param value the value to display next to the {@link FloatSeekBar}
+     * @param textView the TextView label of the row, or null if the value isn't displayed
+     * @param value    the value to display next to the {@link FloatSeekBar}
      */
     @SuppressWarnings("WeakerAccess") /* synthetic access */
-    @SuppressLint("DefaultLocale")
-    void updateLabelValue(float value) {
-        if (_textView != null) {
-            _textView.setText(String.format(_valueFormat, value));
+    void updateLabelValue(@Nullable TextView textView, float value) {
+        if (textView != null) {
+            _valueFormatter.format(value);
+            textView.setText(_valueFormatter.getBuffer(), _valueFormatter.getStart(), _valueFormatter.getLength());
+        }
+    }
+
+    /**
+     * This class is the immutable (and validated) configuration of a float seek bar preference
+     * parsed from its XML attributes.
+     */
+    private static final class Config {
+
+        /**
+         * Whether to show the FloatSeekBar value TextView next to the bar.
+         */
+        final boolean _showSeekBarValue;
+
+        /**
+         * The minimum value.
+         */
+        final float _minimumValue;
+
+        /**
+         * The maximum value.
+         */
+        final float _maximumValue;
+
+        /**
+         * The value increment.
+         */
+        final float _valueIncrement;
+
+        /**
+         * The default value.
+         */
+        final float _defaultValue;
+
+        /**
+         * The number of decimals of the float seek bar value.
+         */
+        final int _decimalCount;
+
+        /**
+         * The color of the progress of the float seek bar.
+         */
+        final int _color;
+
+        /**
+         * The color of the thumb of the float seek bar.
+         */
+        final int _thumbColor;
+
+        /**
+         * The diameter (in pixels) of the thumb of the float seek bar.
+         */
+        final int _diameter;
+
+        /**
+         * The thickness (height) of the seek bar (in pixels).
+         */
+        final int _size;
+
+        /**
+         * The persistence policy.
+         */
+        final int _persistencePolicy;
+
+        /**
+         * The minimum time (in milliseconds) between two writes while the user drags.
+         */
+        final int _persistenceInterval;
+
+        /**
+         * @param context      the context the preference is running in
+         * @param attributeSet the attributes of the XML tag that is inflating the preference,
+         *                     which may be null
+         *
+         * @throws IllegalArgumentException
+         * @noinspection resource, JavadocDeclaration, RedundantSuppression
+         */
+        Config(@NonNull Context context, @Nullable AttributeSet attributeSet) throws IllegalArgumentException {
+            float value, minimumValue, maximumValue, defaultValue, valueIncrement;
+            // the solution below is chosen, since the "try (TypedArray ..." throws an exception
+            TypedArray typedAttributeArray = context.obtainStyledAttributes(attributeSet, R.styleable.FloatSeekBar, 0, 0);
+            try {
+                minimumValue = typedAttributeArray.getFloat(R.styleable.FloatSeekBar_floatMinimumValue, 0);
+                maximumValue = typedAttributeArray.getFloat(R.styleable.FloatSeekBar_floatMaximumValue, 1);
+                if (maximumValue - minimumValue > 0) {
+                    _minimumValue = minimumValue;
+                    _maximumValue = maximumValue;
+                } else {
+                    throw new IllegalArgumentException(context.getString(R.string.float_seek_bar_initiation_error));
+                }
+                // NOTE that the difference between the maximum and minimum values must be equally divisible by the value increment
+                valueIncrement = typedAttributeArray.getFloat(R.styleable.FloatSeekBar_floatValueIncrement, 0.05f);
+                if (valueIncrement > 0) {
+                    value = (maximumValue - minimumValue) / valueIncrement;
+                    if (Math.abs(value - Math.round(value)) < Common.FLOAT_EQUALITY_TOLERANCE) {
+                        _valueIncrement = valueIncrement;
+                    } else {
+                        throw new IllegalArgumentException(context.getString(R.string.float_seek_bar_increment_error));
+                    }
+                } else {
+                    throw new IllegalArgumentException(context.getString(R.string.float_seek_bar_increment_error));
+                }
+                defaultValue = typedAttributeArray.getFloat(R.styleable.FloatSeekBar_floatDefaultValue, 0);
+                if (!(defaultValue < minimumValue) && !(defaultValue > maximumValue)) {
+                    value = defaultValue / valueIncrement;
+                    // NOTE that the difference between the default and minimum values must be equally divisible by the value increment
+                    if (Math.abs(value - Math.round(value)) < Common.FLOAT_EQUALITY_TOLERANCE) {
+                        _defaultValue = defaultValue;
+                    } else {
+                        throw new IllegalArgumentException(context.getString(R.string.float_seek_bar_default_error));
+                    }
+                } else {
+                    throw new IllegalArgumentException(context.getString(R.string.float_seek_bar_default_error));
+                }
+                _showSeekBarValue = typedAttributeArray.getBoolean(R.styleable.FloatSeekBar_floatShowSeekBarValue, true);
+                _decimalCount = typedAttributeArray.getInt(R.styleable.FloatSeekBar_floatDecimalCount, context.getResources().getInteger(R.integer.float_seek_bar_decimal_count_default_value));
+                _color = typedAttributeArray.getColor(R.styleable.FloatSeekBar_floatColor, context.getColor(R.color.color_primary));
+                _thumbColor = typedAttributeArray.getColor(R.styleable.FloatSeekBar_floatThumbColor, context.getColor(R.color.color_primary));
+                _diameter = typedAttributeArray.getInt(R.styleable.FloatSeekBar_floatDiameter, context.getResources().getInteger(R.integer.float_seek_bar_ball_diameter_default_value));
+                _size = typedAttributeArray.getInt(R.styleable.FloatSeekBar_floatSize, context.getResources().getInteger(R.integer.float_seek_bar_size_default_value));
+                _persistencePolicy = typedAttributeArray.getInt(R.styleable.FloatSeekBar_floatPersistencePolicy, PERSISTENCE_POLICY_IMMEDIATE);
+                _persistenceInterval = typedAttributeArray.getInt(R.styleable.FloatSeekBar_floatPersistenceInterval, context.getResources().getInteger(R.integer.float_seek_bar_persistence_interval_default_value));
+            } finally {
+                typedAttributeArray.recycle();
+            }
         }
+
     }
 
 }
@@ -2,26 +2,18 @@ package se.home.magnus.preference.seekbar;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Typeface;
-import android.graphics.drawable.GradientDrawable;
-import android.graphics.drawable.LayerDrawable;
-import android.graphics.drawable.ShapeDrawable;
-import android.graphics.drawable.shapes.OvalShape;
+import android.graphics.drawable.Drawable;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
 import android.util.AttributeSet;
-import android.view.Gravity;
-import android.view.View;
-import android.view.ViewGroup;
-import android.widget.LinearLayout;
 import android.widget.SeekBar;
-import android.widget.TextView;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.appcompat.widget.AppCompatSeekBar;
-import androidx.core.content.res.ResourcesCompat;
-
-import java.util.ArrayList;
-import java.util.List;
 
 import se.home.magnus.preference.R;
 
@@ -30,11 +22,6 @@ import se.home.magnus.preference.R;
  */
 public class LabelSeekBar extends AppCompatSeekBar {
 
-    /**
-     * Tells whether or not the left and right margin of this seek bar is adjusted.
-     */
-    private boolean _isMarginAdjusted;
-
     /**
      * Tells whether or not the seek bar change listener is set. This is a solution to make the
      * "seek bar change listener dependency" mandatory. If the seek bar change listener isn't set
@@ -44,16 +31,69 @@ public class LabelSeekBar extends AppCompatSeekBar {
     private boolean _isSeekBarChangeListenerSet;
 
     /**
-     * The current progress value (divided by the value increment, i.e. the position index in the
-     * "labels array").
+     * Tells whether or not the thumb and the track (progress drawable) of this seek bar are set.
+     */
+    private boolean _isDrawableSet;
+
+    /**
+     * The key of the (cached) thumb of this seek bar.
+     */
+    private long _thumbKey;
+
+    /**
+     * The key of the (cached) track (progress drawable) of this seek bar.
+     */
+    private long _trackKey;
+
+    /**
+     * The current progress value (i.e. the position index in the "labels array").
      */
     private int _value;
 
     /**
-     * Attribute controlling the amount to increment or decrement the seek bar value when the user
-     * moves the thumb.
+     * The height (in pixels) of the labels.
+     */
+    private int _labelHeight;
+
+    /**
+     * The radius (in pixels) of the thumb of this seek bar.
+     */
+    private int _thumbRadius;
+
+    /**
+     * The left padding (in pixels) of this seek bar, excluding the space of the first label.
+     */
+    private final int _basePaddingLeft;
+
+    /**
+     * The right padding (in pixels) of this seek bar, excluding the space of the last label.
+     */
+    private final int _basePaddingRight;
+
+    /**
+     * The bottom padding (in pixels) of this seek bar, excluding the space of the labels.
+     */
+    private final int _basePaddingBottom;
+
+    /**
+     * The minimum horizontal gap (in pixels) between two drawn labels.
+     */
+    private final int _labelGap;
+
+    /**
+     * The width (in pixels) of the widest label.
+     */
+    private float _maximumLabelWidth;
+
+    /**
+     * The (resolved) text color of the selected label.
+     */
+    private final int _selectedColor;
+
+    /**
+     * The (resolved) text color of the unselected labels.
      */
-    private int _valueIncrement;
+    private final int _unselectedColor;
 
     /**
      * A "mandatory" progress change listener.
@@ -72,9 +112,19 @@ public class LabelSeekBar extends AppCompatSeekBar {
     private CharSequence[] _labelArray;
 
     /**
-     * The label views of this seek bar.
+     * The widths (in pixels) of the labels of this seek bar.
      */
-    private final List<TextView> _labelViewList;
+    private float[] _labelWidthArray;
+
+    /**
+     * The (cached) text layouts of the labels of this seek bar.
+     */
+    private StaticLayout[] _labelLayoutArray;
+
+    /**
+     * The paint drawing the labels of this seek bar.
+     */
+    private final TextPaint _labelPaint;
 
     /**
      * @param context      the context this seek bar is running in
@@ -87,26 +137,29 @@ public class LabelSeekBar extends AppCompatSeekBar {
     @SuppressWarnings("JavaDoc")
     public LabelSeekBar(@NonNull Context context, @NonNull AttributeSet attributeSet) throws IllegalArgumentException {
         super(context, attributeSet);
-        LayerDrawable progress;
-        if ((progress = (LayerDrawable) ResourcesCompat.getDrawable(getResources(), R.drawable.label_seek_bar, null)) == null) {
-            throw new IllegalArgumentException(getContext().getString(R.string.label_seek_bar_constructor_error));
-        }
-        _isMarginAdjusted = _isSeekBarChangeListenerSet = false;
+        _isSeekBarChangeListenerSet = _isDrawableSet = false;
         _context = context;
-        _labelViewList = new ArrayList<>();
-        for (int i = 0; i < progress.getNumberOfLayers(); i++) {
-            progress.setLayerHeight(i, 10);
-        }
+        // NOTE that the label colors are resolved once (using the theme of the context)
+        _selectedColor = context.getColor(R.color.color_secondary_dark);
+        _unselectedColor = context.getColor(R.color.color_secondary_light);
+        _labelPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        _labelPaint.setTypeface(Typeface.DEFAULT);
+        _labelPaint.setTextSize(getResources().getDimension(R.dimen.label_seek_bar_label_text_size));
+        _labelGap = getResources().getDimensionPixelSize(R.dimen.label_seek_bar_label_gap);
+        _basePaddingLeft = getPaddingLeft();
+        _basePaddingRight = getPaddingRight();
+        _basePaddingBottom = getPaddingBottom();
         // NOTE that this seek bar is listening on its "super class" returning integer values
-        // between 0 and 100 and these values are forwarded to the listener of this seek bar
-        // as position indices in the "labels array"
+        // between 0 and the number of labels - 1, i.e. one step per label, and these values are
+        // forwarded to the listener of this seek bar as position indices in the "labels array"
         setOnSeekBarChangeListener(new OnSeekBarChangeListener() {
             /**
              * Notification that the value has changed. Clients can use the fromUser parameter
              * to distinguish user-initiated changes from those that occurred programmatically.
              *
              * @param seekBar         the SeekBar whose value has changed
-             * @param progressValue   the current progressValue, this will be in the range 0 and 100
+             * @param progressValue   the current progressValue, this will be in the range 0 and the
+             *                        number of labels - 1
              * @param fromUser        true if the value change was initiated by the user
              */
             @Override
@@ -133,11 +186,10 @@ public class LabelSeekBar extends AppCompatSeekBar {
             public void onStopTrackingTouch(@NonNull SeekBar seekBar) {
                 int value;
                 if (_isSeekBarChangeListenerSet) {
-                    value = __getLabelIndex(seekBar.getProgress());
-                    setProgress(value * _valueIncrement);
+                    value = seekBar.getProgress();
                     _progressListener.onChanged(value);
                     _value = value;
-                    __setLabelColors();
+                    invalidate();
                 }
             }
         });
@@ -158,26 +210,49 @@ public class LabelSeekBar extends AppCompatSeekBar {
      */
     @SuppressWarnings("JavaDoc")
     public void initialize(@NonNull CharSequence[] labelArray, @NonNull LabelSeekBar.OnProgressListener listener, @ColorInt int thumbColor, @ColorInt int color, int size, int diameter) throws IllegalArgumentException {
-        ShapeDrawable thumb = new ShapeDrawable(new OvalShape());
-        LayerDrawable progress = (LayerDrawable) getProgressDrawable();
-        thumb.setIntrinsicWidth(diameter);
-        thumb.setIntrinsicHeight(diameter);
-        ((GradientDrawable) progress.findDrawableByLayerId(R.id.background)).setCornerRadius(size);
-        for (int i = 0; i < progress.getNumberOfLayers(); i++) {
-            progress.setLayerHeight(i, size);
-        }
-        __setLabelColors();
-        getProgressDrawable().setTint(color);
-        thumb.setTint(thumbColor);
-        setThumb(thumb);
+        __setDrawables(thumbColor, color, size, diameter);
         _isSeekBarChangeListenerSet = true;
         _progressListener = listener;
         if (labelArray.length < 2) {
             throw new IllegalArgumentException(_context.getString(R.string.label_seek_bar_initiation_error));
         } else {
-            _valueIncrement = Math.round(100f / (labelArray.length - 1));
-            _labelArray = labelArray;
+            if (labelArray != _labelArray) {
+                _labelArray = labelArray;
+                __createLabelLayouts();
+            }
+            __setLabelPadding();
+            setMax(labelArray.length - 1);
+        }
+    }
+
+    /**
+     * Sets the thumb and the track (progress drawable) of this seek bar as copies of cached
+     * drawables, unless they are already set with the same colors and dimensions.
+     *
+     * @param thumbColor a thumb color
+     * @param color      a progress color
+     * @param size       a thickness (height) of the seek bar (in pixels)
+     * @param diameter   a thumb diameter (in pixels)
+     *
+     * @throws IllegalArgumentException
+     * @noinspection JavadocDeclaration, RedundantSuppression
+     */
+    private void __setDrawables(@ColorInt int thumbColor, @ColorInt int color, int size, int diameter) throws IllegalArgumentException {
+        long thumbKey = SeekBarDrawableCache.getThumbKey(thumbColor, diameter), trackKey = SeekBarDrawableCache.getTrackKey(color, size);
+        Drawable track;
+        if (!_isDrawableSet || trackKey != _trackKey) {
+            if ((track = SeekBarDrawableCache.getTrack(getResources(), R.drawable.label_seek_bar, color, size)) == null) {
+                throw new IllegalArgumentException(getContext().getString(R.string.label_seek_bar_constructor_error));
+            }
+            setProgressDrawable(track);
+            _trackKey = trackKey;
+        }
+        if (!_isDrawableSet || thumbKey != _thumbKey) {
+            setThumb(SeekBarDrawableCache.getThumb(getResources(), thumbColor, diameter));
+            _thumbKey = thumbKey;
+            _thumbRadius = Math.round(diameter / 2f);
         }
+        _isDrawableSet = true;
     }
 
     /**
@@ -192,102 +267,92 @@ public class LabelSeekBar extends AppCompatSeekBar {
         if (value < 0 || value > _labelArray.length - 1) {
             throw new IllegalArgumentException(getContext().getString(R.string.label_seek_bar_value_error));
         }
-        setProgress(value * _valueIncrement);
+        setProgress(value);
         _value = value;
-        __setLabelColors();
+        invalidate();
     }
 
     /**
-     * Draws this view and adjusts the margins if the haven't been adjusted.
+     * Draws this view (including the labels).
      *
      * @param canvas the canvas on which the this seek bar will be drawn
      */
     @Override
     public void onDraw(@NonNull Canvas canvas) {
         super.onDraw(canvas);
-        int labelViewWidth;
-        LinearLayout.LayoutParams layoutParameters;
-        if (!_isMarginAdjusted) {
-            if (!_labelViewList.isEmpty()) {
-                labelViewWidth = Math.round(_labelViewList.get(0).getWidth() / 2f);
-                layoutParameters = (LinearLayout.LayoutParams) getLayoutParams();
-                layoutParameters.leftMargin += labelViewWidth;
-                layoutParameters.rightMargin += labelViewWidth;
-                setLayoutParams(layoutParameters);
-            }
-            _isMarginAdjusted = true;
+        if (_labelLayoutArray != null) {
+            __drawLabels(canvas);
         }
     }
 
     /**
-     * This is called when this seek bar is attached to a window and creates a number "label
-     * views".
+     * Creates the (cached) text layouts of the labels.
      */
-    @Override
-    protected void onAttachedToWindow() {
-        super.onAttachedToWindow();
-        TextView labelView;
-        LinearLayout labelContainer;
-        LinearLayout.LayoutParams layoutParameters;
-        if (_labelViewList.isEmpty()) {
-            labelContainer = ((ViewGroup) getParent()).findViewById(R.id.seekbar_labels);
-            for (CharSequence label : _labelArray) {
-                labelView = new TextView(_context);
-                labelView.setTypeface(null, Typeface.NORMAL);
-                layoutParameters = new LinearLayout.LayoutParams(0, LinearLayout.LayoutParams.WRAP_CONTENT, 1f);
-                labelView.setGravity(Gravity.CENTER);
-                labelView.setText(label);
-                labelView.setLayoutParams(layoutParameters);
-                labelContainer.addView(labelView);
-                _labelViewList.add(labelView);
-            }
-            __setLabelColors();
+    private void __createLabelLayouts() {
+        int width;
+        _labelWidthArray = new float[_labelArray.length];
+        _labelLayoutArray = new StaticLayout[_labelArray.length];
+        _maximumLabelWidth = 0;
+        _labelHeight = 0;
+        for (int i = 0; i < _labelArray.length; i++) {
+            _labelWidthArray[i] = Layout.getDesiredWidth(_labelArray[i], _labelPaint);
+            width = Math.max((int) Math.ceil(_labelWidthArray[i]), 1);
+            _labelLayoutArray[i] = StaticLayout.Builder.obtain(_labelArray[i], 0, _labelArray[i].length(), _labelPaint, width).setAlignment(Layout.Alignment.ALIGN_CENTER).setIncludePad(false).setMaxLines(1).build();
+            _maximumLabelWidth = Math.max(_maximumLabelWidth, _labelWidthArray[i]);
+            _labelHeight = Math.max(_labelHeight, _labelLayoutArray[i].getHeight());
         }
     }
 
     /**
-     * Called when this seek bar has change its visibility. This "overridden method" is only used to
-     * tell whether or not the margins have been adjusted.
-     *
-     * @param visibility the new visibility of this view which is either View.VISIBLE,
-     *                   View.INVISIBLE, or View.GONE
+     * Reserves space for the labels below this seek bar (as bottom padding) and for the parts of
+     * the first and last labels extending beyond the thumb at the ends of this seek bar (as left
+     * and right padding added to the base padding, which holds the thumb). NOTE that since the
+     * insets are set before this seek bar is measured, the preference is laid out once (i.e. the
+     * layout isn't adjusted when this seek bar is drawn).
      */
-    @Override
-    protected void onWindowVisibilityChanged(int visibility) {
-        super.onWindowVisibilityChanged(visibility);
-        _isMarginAdjusted = visibility != View.VISIBLE;
+    private void __setLabelPadding() {
+        int leftOverhang = Math.max((int) Math.ceil(_labelWidthArray[0] / 2) - _thumbRadius, 0);
+        int rightOverhang = Math.max((int) Math.ceil(_labelWidthArray[_labelWidthArray.length - 1] / 2) - _thumbRadius, 0);
+        setPadding(_basePaddingLeft + leftOverhang, getPaddingTop(), _basePaddingRight + rightOverhang, _basePaddingBottom + _labelHeight);
     }
 
     /**
-     * Sets the colors of the labels (selected and unselected) guided by the current progress
-     * value.
+     * Draws the labels centred below the positions of their progress values. NOTE that the labels
+     * are thinned, i.e. only every n:th label is drawn, if adjacent labels would overlap, while the
+     * selected label is always drawn (instead of the labels it would overlap). NOTE that the
+     * unselected labels are drawn before the selected label, i.e. the color of the paint is only
+     * switched twice per draw (and not per label).
+     *
+     * @param canvas the canvas on which the labels will be drawn
      */
-    private void __setLabelColors() {
-        for (int i = 0; i < _labelViewList.size(); i++) {
-            if (_value != i) {
-                _labelViewList.get(i).setTextColor(_context.getColor(R.color.color_secondary_light));
-            } else {
-                _labelViewList.get(i).setTextColor(_context.getColor(R.color.color_secondary_dark));
+    private void __drawLabels(@NonNull Canvas canvas) {
+        int count = _labelLayoutArray.length, stride;
+        float spacing = (float) (getWidth() - getPaddingLeft() - getPaddingRight()) / (count - 1);
+        float top = getHeight() - _basePaddingBottom - _labelHeight;
+        stride = spacing > 0 ? Math.max((int) Math.ceil((_maximumLabelWidth + _labelGap) / spacing), 1) : count;
+        _labelPaint.setColor(_unselectedColor);
+        for (int i = 0; i < count; i += stride) {
+            if (i != _value && (_value % stride == 0 || Math.abs(i - _value) * spacing >= (_labelWidthArray[i] + _labelWidthArray[_value]) / 2 + _labelGap)) {
+                __drawLabel(canvas, i, getPaddingLeft() + i * spacing, top);
             }
         }
+        _labelPaint.setColor(_selectedColor);
+        __drawLabel(canvas, _value, getPaddingLeft() + _value * spacing, top);
     }
 
     /**
-     * Returns the label view list index as a function of a progress value.
+     * Draws a label.
      *
-     * @param progressValue a progress value
-     *
-     * @return a label view list index
+     * @param canvas  the canvas on which the label will be drawn
+     * @param index   the position index of the label in the "labels array"
+     * @param centreX the horizontal centre (in pixels) of the label
+     * @param top     the top (in pixels) of the label
      */
-    private int __getLabelIndex(int progressValue) {
-        float factor;
-        for (int i = 0; i < _labelArray.length; i++) {
-            factor = 2 * i - 1;
-            if (progressValue >= factor * _valueIncrement / 2 && progressValue < (factor + 2) * _valueIncrement / 2) {
-                return i;
-            }
-        }
-        return 0;
+    private void __drawLabel(@NonNull Canvas canvas, int index, float centreX, float top) {
+        canvas.save();
+        canvas.translate(centreX - _labelLayoutArray[index].getWidth() / 2f, top);
+        _labelLayoutArray[index].draw(canvas);
+        canvas.restore();
     }
 
     /**
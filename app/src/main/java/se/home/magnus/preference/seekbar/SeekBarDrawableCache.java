@@ -0,0 +1,128 @@
+package se.home.magnus.preference.seekbar;
+
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.graphics.drawable.LayerDrawable;
+import android.graphics.drawable.ShapeDrawable;
+import android.graphics.drawable.shapes.OvalShape;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.DrawableRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.res.ResourcesCompat;
+
+import se.home.magnus.preference.R;
+import se.home.magnus.preference.utility.DrawableStateCache;
+
+/**
+ * This class is a process-wide cache of the (configured) constant states of the thumbs and the
+ * tracks (progress drawables) of the seek bars in this package. A thumb is keyed by its color and
+ * diameter, and a track is keyed by its drawable resource, color and size. Each seek bar gets its
+ * own (mutated) copy of a cached drawable, i.e. the drawables are inflated and configured once per
+ * "key" instead of once per bind (see "DrawableStateCache"). NOTE that this class must only be
+ * used on the main thread.
+ */
+final class SeekBarDrawableCache {
+
+    /**
+     * The constant states of the cached thumbs keyed by their thumb keys (in one group).
+     */
+    private static final DrawableStateCache THUMB_STATE_CACHE = new DrawableStateCache();
+
+    /**
+     * The constant states of the cached tracks keyed by their drawable resources and (then) by
+     * their track keys.
+     */
+    private static final DrawableStateCache TRACK_STATE_CACHE = new DrawableStateCache();
+
+    /**
+     * This class only contains static methods.
+     */
+    private SeekBarDrawableCache() {
+    }
+
+    /**
+     * Returns the key of a thumb.
+     *
+     * @param thumbColor a thumb color
+     * @param diameter   a thumb diameter (in pixels)
+     *
+     * @return the key of the thumb
+     */
+    static long getThumbKey(@ColorInt int thumbColor, int diameter) {
+        return DrawableStateCache.getKey(thumbColor, diameter);
+    }
+
+    /**
+     * Returns the key of a track.
+     *
+     * @param color a progress color
+     * @param size  a thickness (height) of the track (in pixels)
+     *
+     * @return the key of the track
+     */
+    static long getTrackKey(@ColorInt int color, int size) {
+        return DrawableStateCache.getKey(color, size);
+    }
+
+    /**
+     * Returns a (mutated) copy of a cached thumb, which is created if it isn't cached.
+     *
+     * @param resources  the resources of the seek bar
+     * @param thumbColor a thumb color
+     * @param diameter   a thumb diameter (in pixels)
+     *
+     * @return a thumb
+     */
+    @NonNull
+    static Drawable getThumb(@NonNull Resources resources, @ColorInt int thumbColor, int diameter) {
+        long key = getThumbKey(thumbColor, diameter);
+        ShapeDrawable thumb;
+        Drawable.ConstantState state;
+        if ((state = THUMB_STATE_CACHE.get(resources, 0, key)) == null) {
+            thumb = new ShapeDrawable(new OvalShape());
+            thumb.setIntrinsicWidth(diameter);
+            thumb.setIntrinsicHeight(diameter);
+            thumb.setTint(thumbColor);
+            THUMB_STATE_CACHE.put(0, key, state = thumb.getConstantState());
+        }
+        return DrawableStateCache.newDrawable(resources, state);
+    }
+
+    /**
+     * Returns a (mutated) copy of a cached track, which is created if it isn't cached.
+     *
+     * @param resources  the resources of the seek bar
+     * @param drawableId the drawable resource (a layer list with a "background" layer) of the
+     *                   track
+     * @param color      a progress color
+     * @param size       a thickness (height) of the track (in pixels)
+     *
+     * @return a track or null if the drawable resource couldn't be loaded
+     */
+    @Nullable
+    static Drawable getTrack(@NonNull Resources resources, @DrawableRes int drawableId, @ColorInt int color, int size) {
+        long key = getTrackKey(color, size);
+        LayerDrawable track;
+        Drawable.ConstantState state;
+        if ((state = TRACK_STATE_CACHE.get(resources, drawableId, key)) == null) {
+            if ((track = (LayerDrawable) ResourcesCompat.getDrawable(resources, drawableId, null)) == null) {
+                return null;
+            }
+            // NOTE that the loaded drawable shares its state with the drawable cache of the
+            // resources (and with the tracks of the other keys), i.e. it is mutated before it is
+            // configured
+            track = (LayerDrawable) track.mutate();
+            ((GradientDrawable) track.findDrawableByLayerId(R.id.background)).setCornerRadius(size);
+            for (int i = 0; i < track.getNumberOfLayers(); i++) {
+                track.setLayerHeight(i, size);
+            }
+            track.setTint(color);
+            TRACK_STATE_CACHE.put(drawableId, key, state = track.getConstantState());
+        }
+        return DrawableStateCache.newDrawable(resources, state);
+    }
+
+}
@@ -18,16 +18,21 @@ package se.home.magnus.preference.seekbar;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.util.AttributeSet;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.preference.Preference;
 import androidx.preference.PreferenceViewHolder;
 
+import java.util.Arrays;
+
+import se.home.magnus.preference.utility.AttributeConfigCache;
 import se.home.magnus.preference.utility.Common;
+import se.home.magnus.preference.utility.PersistedValuePreference;
+import se.home.magnus.preference.utility.PreferenceDefaults;
 import se.home.magnus.preference.R;
 
 /**
@@ -36,7 +41,7 @@ import se.home.magnus.preference.R;
  * "i" is associated with the value with the same position index. To configure the seek bar of this
  * preference see "label_seek_bar_preference.xml".
  */
-public class TextSeekBarPreference extends Preference implements LabelSeekBar.OnProgressListener {
+public class TextSeekBarPreference extends PersistedValuePreference implements LabelSeekBar.OnProgressListener, PreferenceDefaults.Resettable {
 
     /**
      * The color of the seek bar of this preference.
@@ -64,9 +69,9 @@ public class TextSeekBarPreference extends Preference implements LabelSeekBar.On
     private final float _defaultValue;
 
     /**
-     * The seek bar of this preference.
+     * The (cached) current value, which is read by "getValue" from any thread without locking.
      */
-    private LabelSeekBar _labelSeekBar;
+    private volatile float _value;
 
     /**
      * The values of the "discontinuous choices" of the seek bar of this preference.
@@ -78,6 +83,18 @@ public class TextSeekBarPreference extends Preference implements LabelSeekBar.On
      */
     private final CharSequence[] _labelArray;
 
+    /**
+     * The values of the "value array" sorted in ascending order.
+     */
+    private final float[] _sortedValueArray;
+
+    /**
+     * The position indices in the "value array" of the values in the "sorted value array", i.e.
+     * the value at the position index "i" in the "sorted value array" has the position index
+     * "_sortedIndexArray[i]" in the "value array".
+     */
+    private final int[] _sortedIndexArray;
+
     /**
      * @param context      the context this preference is running in, through which it can access
      *                     the current theme, resources, etc
@@ -89,34 +106,18 @@ public class TextSeekBarPreference extends Preference implements LabelSeekBar.On
      */
     public TextSeekBarPreference(@NonNull Context context, @Nullable AttributeSet attributeSet) throws IllegalArgumentException {
         super(context, attributeSet, 0);
-        CharSequence[] valueArray;
-        // the solution below is chosen, since the "try (TypedArray ..." throws an exception
-        TypedArray typedAttributeArray = context.obtainStyledAttributes(attributeSet, R.styleable.TextSeekBar, 0, 0);
-        try {
-            _thumbColor = typedAttributeArray.getColor(R.styleable.TextSeekBar_textThumbColor, context.getColor(R.color.color_primary));
-            _color = typedAttributeArray.getColor(R.styleable.TextSeekBar_textColor, context.getColor(R.color.color_primary));
-            _diameter = typedAttributeArray.getInt(R.styleable.TextSeekBar_textDiameter, context.getResources().getInteger(R.integer.text_seek_bar_ball_diameter_default_value));
-            _size = typedAttributeArray.getInt(R.styleable.TextSeekBar_textSize, context.getResources().getInteger(R.integer.text_seek_bar_size_default_value));
-            _defaultValue = typedAttributeArray.getFloat(R.styleable.TextSeekBar_textDefaultValue, 0);
-            if ((valueArray = typedAttributeArray.getTextArray(R.styleable.TextSeekBar_textValues)) != null) {
-                _valueArray = new float[valueArray.length];
-                for (int i = 0; i < _valueArray.length; i++) {
-                    try {
-                        _valueArray[i] = Float.parseFloat((String) valueArray[i]);
-                    } catch (Exception e) {
-                        throw new IllegalArgumentException(getContext().getString(R.string.text_seek_bar_value_array_error));
-                    }
-                }
-            } else {
-                throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_value_array_error));
-            }
-            _labelArray = typedAttributeArray.getTextArray(R.styleable.TextSeekBar_textLabels);
-            if (_valueArray.length != _labelArray.length) {
-                throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_value_label_array_error));
-            }
-        } finally {
-            typedAttributeArray.recycle();
-        }
+        // NOTE that the configuration is parsed (and validated) once per XML tag, resource
+        // configuration and theme (see "AttributeConfigCache")
+        Config config = AttributeConfigCache.get(Config.class, context, attributeSet, Config::new);
+        _color = config._color;
+        _thumbColor = config._thumbColor;
+        _diameter = config._diameter;
+        _size = config._size;
+        _value = _defaultValue = config._defaultValue;
+        _valueArray = config._valueArray;
+        _labelArray = config._labelArray;
+        _sortedValueArray = config._sortedValueArray;
+        _sortedIndexArray = config._sortedIndexArray;
     }
 
     /**
@@ -136,24 +137,11 @@ public class TextSeekBarPreference extends Preference implements LabelSeekBar.On
     @Override
     public void onBindViewHolder(@NonNull PreferenceViewHolder preferenceViewHolder) throws IllegalArgumentException {
         super.onBindViewHolder(preferenceViewHolder);
-        int index = -1;
-        float value = getPersistedFloat(_defaultValue);
-        // the next statement is crucial because, if the "preference view holder" isn't set
-        // to be NOT recyclable, all "text seek bar preference" instances will share the same
-        // "text seek bar" instance
-        preferenceViewHolder.setIsRecyclable(false);
-        _labelSeekBar = (LabelSeekBar) preferenceViewHolder.findViewById(R.id.seekbar);
-        _labelSeekBar.initialize(_labelArray, this, _thumbColor, _color, _size, _diameter);
-        for (int i = 0; i < _valueArray.length; i++) {
-            if (Math.abs(_valueArray[i] - value) < Common.FLOAT_EQUALITY_TOLERANCE) {
-                index = i;
-                break;
-            }
-        }
-        if (index < 0) {
-            throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_value_error));
-        }
-        _labelSeekBar.setValue(index);
+        // NOTE that the row may be recycled from another preference, i.e. all the state of the
+        // row is (re)bound and initializing the seek bar replaces its listener
+        LabelSeekBar labelSeekBar = (LabelSeekBar) preferenceViewHolder.findViewById(R.id.seekbar);
+        labelSeekBar.initialize(_labelArray, this, _thumbColor, _color, _size, _diameter);
+        labelSeekBar.setValue(__getIndex(_value));
     }
 
     /**
@@ -167,25 +155,34 @@ public class TextSeekBarPreference extends Preference implements LabelSeekBar.On
      */
     @SuppressWarnings("JavaDoc")
     public void onChanged(int value) throws IllegalArgumentException {
-        persistFloat(_valueArray[value]);
+        _value = _valueArray[value];
+        persistFloat(_value);
     }
 
     /**
-     * Sets the color of the seek bar of this preference.
+     * Sets the color of the seek bar of this preference (and rebinds the row of this preference,
+     * if any, if the color has changed).
      *
      * @param color a color
      */
     public void setColor(@ColorInt int color) {
-        _color = color;
+        if (color != _color) {
+            _color = color;
+            notifyChanged();
+        }
     }
 
     /**
-     * Sets the color of the thumb of the seek bar of this preference.
+     * Sets the color of the thumb of the seek bar of this preference (and rebinds the row of this
+     * preference, if any, if the color has changed).
      *
      * @param color a color
      */
     public void setThumbColor(@ColorInt int color) {
-        _thumbColor = color;
+        if (color != _thumbColor) {
+            _thumbColor = color;
+            notifyChanged();
+        }
     }
 
     /**
@@ -196,16 +193,38 @@ public class TextSeekBarPreference extends Preference implements LabelSeekBar.On
     }
 
     /**
-     * Returns the value of this preference.
+     * Resets this preference to its default value and rebinds its row (see
+     * "PreferenceDefaults.resetAll").
+     *
+     * @param editor an editor of the shared preferences or null if there isn't any editor
+     */
+    @Override
+    public void resetDefault(@Nullable SharedPreferences.Editor editor) {
+        _value = _defaultValue;
+        if (PreferenceDefaults.isEdited(this, editor)) {
+            editor.putFloat(getKey(), _value);
+        } else {
+            persistFloat(_value);
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Returns the value of this preference. NOTE that the value is the default value while the
+     * shared preferences are being preloaded (see "PersistedValueObserver"), unless it has been
+     * changed in the meantime.
      *
      * return the value of this preference
      */
     public float getValue() {
-        return getPersistedFloat(_defaultValue);
+        return _value;
     }
 
     /**
-     * Sets the initial value of this preference.
+     * Sets the initial value of this preference, i.e. only the (cached) current value. NOTE that
+     * the initial value is never persisted, since it would otherwise overwrite the persisted value
+     * with the default value if it is set while the shared preferences are being preloaded (see
+     * "PersistedValueObserver").
      *
      * @param defaultValue the default value for the preference if set, otherwise null
      */
@@ -214,30 +233,214 @@ public class TextSeekBarPreference extends Preference implements LabelSeekBar.On
         if (defaultValue == null) {
             defaultValue = _defaultValue;
         }
-        __setValue(getPersistedFloat(Float.parseFloat(defaultValue.toString())));
+        _value = getPersistedFloat(Float.parseFloat(defaultValue.toString()));
     }
 
     /**
-     * Sets the current value (and implicitly the seek bar value).
+     * Reads the persisted current value again and rebinds the row of this preference if it has
+     * changed.
+     */
+    @Override
+    protected void onRefresh() {
+        float value;
+        if ((value = getPersistedFloat(_defaultValue)) != _value) {
+            _value = value;
+            notifyChanged();
+        }
+    }
+
+    /**
+     * Persists the current value, which was changed while the shared preferences were being
+     * preloaded.
+     */
+    @Override
+    protected void onPersist() {
+        persistFloat(_value);
+    }
+
+    /**
+     * Sets the current value (and implicitly the seek bar value by rebinding the row of this
+     * preference, if any).
      *
      * @param value the current value which must be an element in the "value array"
+     *
+     * @throws IllegalArgumentException
+     * @noinspection JavadocDeclaration, RedundantSuppression
      */
-    private void __setValue(float value) {
-        int index;
-        if (_labelSeekBar != null) {
-            index = -1;
-            for (int i = 0; i < _valueArray.length; i++) {
-                if (Math.abs(_valueArray[i] - value) < Common.FLOAT_EQUALITY_TOLERANCE) {
-                    index = i;
-                    break;
+    private void __setValue(float value) throws IllegalArgumentException {
+        // NOTE that the value is validated before it is persisted
+        __getIndex(value);
+        _value = value;
+        persistFloat(value);
+        notifyChanged();
+    }
+
+    /**
+     * Returns the position index of a value in the "value array" by a binary search in the "sorted
+     * value array", where the values are "considered" equal within the float equality tolerance.
+     *
+     * @param value a value which must be an element in the "value array"
+     *
+     * @return a position index in the "value array"
+     *
+     * @throws IllegalArgumentException
+     * @noinspection RedundantSuppression
+     */
+    @SuppressWarnings("JavaDoc")
+    private int __getIndex(float value) throws IllegalArgumentException {
+        int low = 0, high = _sortedValueArray.length - 1, middle, index = -1;
+        while (low <= high) {
+            middle = (low + high) >>> 1;
+            if (_sortedValueArray[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        // NOTE that "low" is now the position index of the first value not less than the value,
+        // i.e. the closest value is either at "low" or at "low - 1"
+        if (low < _sortedValueArray.length && _sortedValueArray[low] - value < Common.FLOAT_EQUALITY_TOLERANCE) {
+            index = low;
+        }
+        if (low > 0 && value - _sortedValueArray[low - 1] < Common.FLOAT_EQUALITY_TOLERANCE && (index < 0 || value - _sortedValueArray[low - 1] < _sortedValueArray[low] - value)) {
+            index = low - 1;
+        }
+        if (index < 0) {
+            throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_value_error));
+        }
+        return _sortedIndexArray[index];
+    }
+
+    /**
+     * This class is the immutable (and validated) configuration of a text seek bar preference
+     * parsed from its XML attributes.
+     */
+    private static final class Config {
+
+        /**
+         * The color of the seek bar of the preference.
+         */
+        final int _color;
+
+        /**
+         * The color of the thumb of the seek bar of the preference.
+         */
+        final int _thumbColor;
+
+        /**
+         * The diameter (in pixels) of the thumb of the seek bar of the preference.
+         */
+        final int _diameter;
+
+        /**
+         * The height (in pixels) of the seek bar of the preference.
+         */
+        final int _size;
+
+        /**
+         * The default value of the seek bar which must be an element in the "value array".
+         */
+        final float _defaultValue;
+
+        /**
+         * The values of the "discontinuous choices" of the seek bar of the preference.
+         */
+        final float[] _valueArray;
+
+        /**
+         * The labels of the "discontinuous choices" of the seek bar of the preference.
+         */
+        final CharSequence[] _labelArray;
+
+        /**
+         * The values of the "value array" sorted in ascending order.
+         */
+        final float[] _sortedValueArray;
+
+        /**
+         * The position indices in the "value array" of the values in the "sorted value array".
+         */
+        final int[] _sortedIndexArray;
+
+        /**
+         * @param context      the context the preference is running in
+         * @param attributeSet the attributes of the XML tag that is inflating the preference,
+         *                     which may be null
+         *
+         * @throws IllegalArgumentException
+         * @noinspection resource, JavadocDeclaration, RedundantSuppression
+         */
+        Config(@NonNull Context context, @Nullable AttributeSet attributeSet) throws IllegalArgumentException {
+            int bits;
+            long[] keyArray;
+            CharSequence[] valueArray;
+            // the solution below is chosen, since the "try (TypedArray ..." throws an exception
+            TypedArray typedAttributeArray = context.obtainStyledAttributes(attributeSet, R.styleable.TextSeekBar, 0, 0);
+            try {
+                _thumbColor = typedAttributeArray.getColor(R.styleable.TextSeekBar_textThumbColor, context.getColor(R.color.color_primary));
+                _color = typedAttributeArray.getColor(R.styleable.TextSeekBar_textColor, context.getColor(R.color.color_primary));
+                _diameter = typedAttributeArray.getInt(R.styleable.TextSeekBar_textDiameter, context.getResources().getInteger(R.integer.text_seek_bar_ball_diameter_default_value));
+                _size = typedAttributeArray.getInt(R.styleable.TextSeekBar_textSize, context.getResources().getInteger(R.integer.text_seek_bar_size_default_value));
+                _defaultValue = typedAttributeArray.getFloat(R.styleable.TextSeekBar_textDefaultValue, 0);
+                if ((valueArray = typedAttributeArray.getTextArray(R.styleable.TextSeekBar_textValues)) != null) {
+                    _valueArray = new float[valueArray.length];
+                    for (int i = 0; i < _valueArray.length; i++) {
+                        try {
+                            _valueArray[i] = Float.parseFloat((String) valueArray[i]);
+                        } catch (Exception e) {
+                            throw new IllegalArgumentException(context.getString(R.string.text_seek_bar_value_array_error));
+                        }
+                    }
+                } else {
+                    throw new IllegalArgumentException(context.getString(R.string.generic_seek_bar_value_array_error));
                 }
+                _labelArray = typedAttributeArray.getTextArray(R.styleable.TextSeekBar_textLabels);
+                if (_valueArray.length != _labelArray.length) {
+                    throw new IllegalArgumentException(context.getString(R.string.generic_seek_bar_value_label_array_error));
+                }
+                // NOTE that the values are sorted, together with their position indices, as longs
+                // where the "upper int" is the value transformed to an int with the same ordering and
+                // the "lower int" is the position index
+                keyArray = new long[_valueArray.length];
+                for (int i = 0; i < _valueArray.length; i++) {
+                    bits = Float.floatToIntBits(_valueArray[i]);
+                    bits ^= (bits >> 31) & Integer.MAX_VALUE;
+                    keyArray[i] = ((long) bits << 32) | i;
+                }
+                Arrays.sort(keyArray);
+                _sortedValueArray = new float[_valueArray.length];
+                _sortedIndexArray = new int[_valueArray.length];
+                for (int i = 0; i < keyArray.length; i++) {
+                    _sortedIndexArray[i] = (int) keyArray[i];
+                    _sortedValueArray[i] = _valueArray[_sortedIndexArray[i]];
+                    if (i > 0 && _sortedValueArray[i] - _sortedValueArray[i - 1] < Common.FLOAT_EQUALITY_TOLERANCE) {
+                        throw new IllegalArgumentException(context.getString(R.string.text_seek_bar_value_collision_error, _sortedValueArray[i - 1], _sortedValueArray[i]));
+                    }
+                }
+                __validateDefaultValue(context);
+            } finally {
+                typedAttributeArray.recycle();
             }
-            if (index < 0) {
-                throw new IllegalArgumentException(getContext().getString(R.string.generic_seek_bar_value_error));
+        }
+
+        /**
+         * Validates that the default value is an element in the "value array", where the values
+         * are "considered" equal within the float equality tolerance.
+         *
+         * @param context the context the preference is running in
+         *
+         * @throws IllegalArgumentException
+         * @noinspection JavadocDeclaration, RedundantSuppression
+         */
+        private void __validateDefaultValue(@NonNull Context context) throws IllegalArgumentException {
+            for (float value : _valueArray) {
+                if (Math.abs(value - _defaultValue) < Common.FLOAT_EQUALITY_TOLERANCE) {
+                    return;
+                }
             }
-            _labelSeekBar.setValue(index);
+            throw new IllegalArgumentException(context.getString(R.string.generic_seek_bar_value_error));
         }
-        persistFloat(value);
+
     }
 
 }
@@ -0,0 +1,468 @@
+package se.home.magnus.preference.store;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.preference.PreferenceDataStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import se.home.magnus.preference.utility.Common;
+
+/**
+ * This class is a preference data store backed by shared preferences, which keeps an in-memory
+ * snapshot of the values and writes them behind, i.e. the writes of all preferences using this
+ * data store are merged into one batch per batch interval, which is written (as one edit) on a
+ * background thread. To use this data store set it on the preference manager of a preference
+ * fragment (or on single preferences), e.g.
+ * <pre>
+ * getPreferenceManager().setPreferenceDataStore(new BatchedPreferenceDataStore(sharedPreferences));
+ * </pre>
+ * NOTE that the pending writes SHOULD be flushed (see "flush", which never blocks the calling
+ * thread) in a lifecycle hook, e.g. when the activity is paused, and that the shared preferences
+ * MUST NOT be edited by anyone else while this data store is used. The snapshot is loaded on a
+ * background thread when this data store is created, i.e. it SHOULD be created early (e.g. when
+ * the activity is created), and a read never waits for it to be loaded, i.e. a read of a value not
+ * written by this data store returns the default value until the snapshot is loaded (see
+ * "isLoading" and "notifyWhenLoaded"). The preferences of this library neither read nor write
+ * their values until the snapshot is loaded and are then refreshed (see "PersistedValueObserver"),
+ * whereas other preferences keep the default values they read while the snapshot was being loaded.
+ */
+public class BatchedPreferenceDataStore extends PreferenceDataStore {
+
+    /**
+     * The default batch interval (in milliseconds).
+     */
+    public static final long DEFAULT_BATCH_INTERVAL = 100;
+
+    /**
+     * A value denoting a removed key in the snapshot and in the pending batch (since null values
+     * can't be stored in a concurrent hash map).
+     */
+    private static final Object REMOVED = new Object();
+
+    /**
+     * The (single) background thread on which the snapshots are loaded and the batches are written
+     * for all data stores.
+     */
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(Common.newDaemonThreadFactory("BatchedPreferenceDataStore"));
+
+    /**
+     * The handler notifying the load listeners on the main thread.
+     */
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * Tells whether or not the snapshot contains all the values of the shared preferences.
+     */
+    private volatile boolean _isLoaded;
+
+    /**
+     * The listeners to notify when the snapshot is loaded, which also guards "is loaded" when the
+     * snapshot is loaded.
+     */
+    private final List<SharedPreferences.OnSharedPreferenceChangeListener> _loadListenerList;
+
+    /**
+     * Tells whether or not a write of the pending batch is scheduled.
+     */
+    private boolean _isWriteScheduled;
+
+    /**
+     * The batch interval (in milliseconds).
+     */
+    private final long _batchInterval;
+
+    /**
+     * The lock guarding the pending batch.
+     */
+    private final Object _batchLock;
+
+    /**
+     * The shared preferences to which the values are written.
+     */
+    private final SharedPreferences _sharedPreferences;
+
+    /**
+     * The in-memory snapshot of the values keyed by their keys.
+     */
+    private final Map<String, Object> _snapshotMap;
+
+    /**
+     * The values (of the pending batch) not written yet keyed by their keys.
+     */
+    private Map<String, Object> _pendingMap;
+
+    /**
+     * A runnable writing the pending batch.
+     */
+    private final Runnable _writeRunnable;
+
+    /**
+     * @param sharedPreferences the shared preferences to which the values are written
+     */
+    public BatchedPreferenceDataStore(@NonNull SharedPreferences sharedPreferences) {
+        this(sharedPreferences, DEFAULT_BATCH_INTERVAL);
+    }
+
+    /**
+     * @param sharedPreferences the shared preferences to which the values are written
+     * @param batchInterval     the maximum time (in milliseconds) a write is pending before it is
+     *                          written together with the other writes of its batch
+     */
+    public BatchedPreferenceDataStore(@NonNull SharedPreferences sharedPreferences, long batchInterval) {
+        _isLoaded = _isWriteScheduled = false;
+        _batchInterval = Math.max(batchInterval, 0);
+        _loadListenerList = new ArrayList<>();
+        _batchLock = new Object();
+        _sharedPreferences = sharedPreferences;
+        _snapshotMap = new ConcurrentHashMap<>();
+        _pendingMap = new HashMap<>();
+        _writeRunnable = new Runnable() {
+            /**
+             * Writes the pending batch.
+             */
+            @Override
+            public void run() {
+                __write();
+            }
+        };
+        // NOTE that the snapshot is loaded on the background thread and that the values written
+        // (or removed) before it is loaded are newer than the loaded ones
+        EXECUTOR.execute(new Runnable() {
+            /**
+             * Loads the snapshot.
+             */
+            @Override
+            public void run() {
+                try {
+                    for (Map.Entry<String, ?> entry : _sharedPreferences.getAll().entrySet()) {
+                        if (entry.getValue() != null) {
+                            _snapshotMap.putIfAbsent(entry.getKey(), entry.getValue() instanceof Set ? new HashSet<>((Set<?>) entry.getValue()) : entry.getValue());
+                        }
+                    }
+                } finally {
+                    // NOTE that the listeners are notified even if the snapshot couldn't be loaded
+                    __onLoaded();
+                }
+            }
+        });
+    }
+
+    /**
+     * Tells whether or not the snapshot is being loaded, i.e. whether or not a read of a value not
+     * written by this data store returns the default value instead of the persisted value.
+     *
+     * @return true if the snapshot is being loaded, otherwise false
+     */
+    public boolean isLoading() {
+        return !_isLoaded;
+    }
+
+    /**
+     * Notifies a listener (on the main thread, with the shared preferences of this data store and
+     * a null key) when the snapshot is loaded, or as soon as possible if it is already loaded.
+     *
+     * @param listener a listener refreshing the (cached) value of a preference
+     */
+    public void notifyWhenLoaded(@NonNull SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        synchronized (_loadListenerList) {
+            if (!_isLoaded) {
+                _loadListenerList.add(listener);
+                return;
+            }
+        }
+        __notify(listener);
+    }
+
+    /**
+     * Writes the pending batch, if any, immediately on the background thread, i.e. the calling
+     * thread (e.g. the main thread in a lifecycle hook) never waits for the shared preferences to
+     * be loaded from disk. NOTE that the values are written to the shared preferences in memory
+     * and that the shared preferences write them to disk on a background thread (which the
+     * application waits for when an activity is stopped).
+     *
+     * @return a future which is done when the pending batch has been written to the shared
+     *         preferences (in memory)
+     */
+    @NonNull
+    public Future<?> flush() {
+        return EXECUTOR.submit(_writeRunnable);
+    }
+
+    /**
+     * Puts a string value (in the snapshot and in the pending batch).
+     *
+     * @param key   a key
+     * @param value a value or null if the key is removed
+     */
+    @Override
+    public void putString(@NonNull String key, @Nullable String value) {
+        __put(key, value);
+    }
+
+    /**
+     * Puts a string set value (in the snapshot and in the pending batch).
+     *
+     * @param key    a key
+     * @param values a value or null if the key is removed
+     */
+    @Override
+    public void putStringSet(@NonNull String key, @Nullable Set<String> values) {
+        __put(key, values != null ? new HashSet<>(values) : null);
+    }
+
+    /**
+     * Puts an int value (in the snapshot and in the pending batch).
+     *
+     * @param key   a key
+     * @param value a value
+     */
+    @Override
+    public void putInt(@NonNull String key, int value) {
+        __put(key, value);
+    }
+
+    /**
+     * Puts a long value (in the snapshot and in the pending batch).
+     *
+     * @param key   a key
+     * @param value a value
+     */
+    @Override
+    public void putLong(@NonNull String key, long value) {
+        __put(key, value);
+    }
+
+    /**
+     * Puts a float value (in the snapshot and in the pending batch).
+     *
+     * @param key   a key
+     * @param value a value
+     */
+    @Override
+    public void putFloat(@NonNull String key, float value) {
+        __put(key, value);
+    }
+
+    /**
+     * Puts a boolean value (in the snapshot and in the pending batch).
+     *
+     * @param key   a key
+     * @param value a value
+     */
+    @Override
+    public void putBoolean(@NonNull String key, boolean value) {
+        __put(key, value);
+    }
+
+    /**
+     * Returns a string value (from the snapshot).
+     *
+     * @param key          a key
+     * @param defaultValue a default value returned if there is no value of the key
+     *
+     * @return a value
+     */
+    @Nullable
+    @Override
+    public String getString(@NonNull String key, @Nullable String defaultValue) {
+        Object value = __get(key);
+        return value != null ? (String) value : defaultValue;
+    }
+
+    /**
+     * Returns a string set value (from the snapshot). NOTE that the returned set is an unmodifiable
+     * view of the set in the snapshot, which is never modified (see "putStringSet").
+     *
+     * @param key           a key
+     * @param defaultValues a default value returned if there is no value of the key
+     *
+     * @return a value
+     * @noinspection unchecked
+     */
+    @Nullable
+    @Override
+    public Set<String> getStringSet(@NonNull String key, @Nullable Set<String> defaultValues) {
+        Object value = __get(key);
+        return value != null ? Collections.unmodifiableSet((Set<String>) value) : defaultValues;
+    }
+
+    /**
+     * Returns an int value (from the snapshot).
+     *
+     * @param key          a key
+     * @param defaultValue a default value returned if there is no value of the key
+     *
+     * @return a value
+     */
+    @Override
+    public int getInt(@NonNull String key, int defaultValue) {
+        Object value = __get(key);
+        return value != null ? (Integer) value : defaultValue;
+    }
+
+    /**
+     * Returns a long value (from the snapshot).
+     *
+     * @param key          a key
+     * @param defaultValue a default value returned if there is no value of the key
+     *
+     * @return a value
+     */
+    @Override
+    public long getLong(@NonNull String key, long defaultValue) {
+        Object value = __get(key);
+        return value != null ? (Long) value : defaultValue;
+    }
+
+    /**
+     * Returns a float value (from the snapshot).
+     *
+     * @param key          a key
+     * @param defaultValue a default value returned if there is no value of the key
+     *
+     * @return a value
+     */
+    @Override
+    public float getFloat(@NonNull String key, float defaultValue) {
+        Object value = __get(key);
+        return value != null ? (Float) value : defaultValue;
+    }
+
+    /**
+     * Returns a boolean value (from the snapshot).
+     *
+     * @param key          a key
+     * @param defaultValue a default value returned if there is no value of the key
+     *
+     * @return a value
+     */
+    @Override
+    public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+        Object value = __get(key);
+        return value != null ? (Boolean) value : defaultValue;
+    }
+
+    /**
+     * Returns the value of a key in the snapshot. NOTE that the read never waits for the snapshot
+     * to be loaded, i.e. if the snapshot isn't loaded yet and the key hasn't been written (or
+     * removed) there is no value of the key (see "isLoading").
+     *
+     * @param key a key
+     *
+     * @return the value or null if there is no value of the key
+     */
+    @Nullable
+    private Object __get(@NonNull String key) {
+        Object value = _snapshotMap.get(key);
+        return value != REMOVED ? value : null;
+    }
+
+    /**
+     * Marks the snapshot as loaded and notifies the listeners waiting for it.
+     */
+    private void __onLoaded() {
+        List<SharedPreferences.OnSharedPreferenceChangeListener> listeners;
+        synchronized (_loadListenerList) {
+            _isLoaded = true;
+            listeners = new ArrayList<>(_loadListenerList);
+            _loadListenerList.clear();
+        }
+        for (SharedPreferences.OnSharedPreferenceChangeListener listener : listeners) {
+            __notify(listener);
+        }
+    }
+
+    /**
+     * Notifies a listener on the main thread that the snapshot is loaded.
+     *
+     * @param listener a listener
+     */
+    private void __notify(@NonNull SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        MAIN_HANDLER.post(new Runnable() {
+            /**
+             * Notifies the listener (with a null key, i.e. all the values may have changed).
+             */
+            @Override
+            public void run() {
+                listener.onSharedPreferenceChanged(_sharedPreferences, null);
+            }
+        });
+    }
+
+    /**
+     * Puts a value in the snapshot and in the pending batch, and schedules a write of the pending
+     * batch unless it is already scheduled.
+     *
+     * @param key   a key
+     * @param value a value or null if the key is removed
+     */
+    private void __put(@NonNull String key, @Nullable Object value) {
+        if (value == null) {
+            value = REMOVED;
+        }
+        _snapshotMap.put(key, value);
+        synchronized (_batchLock) {
+            _pendingMap.put(key, value);
+            if (!_isWriteScheduled) {
+                EXECUTOR.schedule(_writeRunnable, _batchInterval, TimeUnit.MILLISECONDS);
+                _isWriteScheduled = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the pending batch, if any, as one edit of the shared preferences. NOTE that this
+     * method is only run on the background thread, i.e. the batches are written in the same
+     * order as they are taken.
+     *
+     * @noinspection unchecked
+     */
+    private void __write() {
+        Map<String, Object> batchMap;
+        SharedPreferences.Editor editor;
+        synchronized (_batchLock) {
+            _isWriteScheduled = false;
+            if (_pendingMap.isEmpty()) {
+                return;
+            }
+            batchMap = _pendingMap;
+            _pendingMap = new HashMap<>();
+        }
+        editor = _sharedPreferences.edit();
+        for (Map.Entry<String, Object> entry : batchMap.entrySet()) {
+            if (entry.getValue() == REMOVED) {
+                editor.remove(entry.getKey());
+            } else if (entry.getValue() instanceof String) {
+                editor.putString(entry.getKey(), (String) entry.getValue());
+            } else if (entry.getValue() instanceof Set) {
+                editor.putStringSet(entry.getKey(), (Set<String>) entry.getValue());
+            } else if (entry.getValue() instanceof Integer) {
+                editor.putInt(entry.getKey(), (Integer) entry.getValue());
+            } else if (entry.getValue() instanceof Long) {
+                editor.putLong(entry.getKey(), (Long) entry.getValue());
+            } else if (entry.getValue() instanceof Float) {
+                editor.putFloat(entry.getKey(), (Float) entry.getValue());
+            } else if (entry.getValue() instanceof Boolean) {
+                editor.putBoolean(entry.getKey(), (Boolean) entry.getValue());
+            }
+        }
+        editor.apply();
+    }
+
+}
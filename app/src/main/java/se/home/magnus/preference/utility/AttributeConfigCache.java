@@ -0,0 +1,296 @@
+package se.home.magnus.preference.utility;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.util.AttributeSet;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Objects;
+
+/**
+ * This class is a process-wide cache of the immutable (and validated) configurations parsed from
+ * the XML attributes of the preferences of this library, i.e. when the same preference XML is
+ * inflated again the configurations are reused instead of being parsed (and validated) again. A
+ * configuration is keyed by its class, the raw XML attributes, the resource configuration (e.g.
+ * the locale and the screen density) and the theme, since the parsed values may come from the
+ * theme (e.g. "?attr/colorPrimary", or attributes which aren't set in the XML but in the theme).
+ * NOTE that the number of cached configurations is bounded, i.e. the least recently used ones are
+ * evicted, and that a lookup doesn't copy the attributes, the resource configuration or the theme
+ * (as caching a configuration does), but that reading the raw XML attributes (to hash and compare
+ * them) may allocate their string values, i.e. a lookup is cheaper than parsing the configuration
+ * but isn't free of allocations.
+ */
+public class AttributeConfigCache {
+
+    /**
+     * The maximum number of cached configurations.
+     */
+    private static final int MAXIMUM_SIZE = 64;
+
+    /**
+     * The cached configurations keyed by their keys.
+     */
+    private static final LruCache<Key, Object> CONFIG_CACHE = new LruCache<>(MAXIMUM_SIZE);
+
+    /**
+     * The key looking up the cached configurations, which is reused (while holding its lock), i.e.
+     * it refers to the attribute set, the resource configuration and the theme being looked up
+     * instead of copies of them.
+     */
+    private static final Key LOOKUP_KEY = new Key();
+
+    /**
+     * Returns the cached configuration of an attribute set, which is parsed (and cached) if it
+     * isn't cached.
+     *
+     * @param configClass  the class of the configuration
+     * @param context      the context the preference is running in
+     * @param attributeSet the attributes of the XML tag that is inflating the preference, which
+     *                     may be null
+     * @param parser       a parser of the configuration
+     * @param <T>          the type of the configuration
+     *
+     * @return a configuration
+     *
+     * @throws IllegalArgumentException
+     * @noinspection JavadocDeclaration, RedundantSuppression, unchecked
+     */
+    @NonNull
+    public static <T> T get(@NonNull Class<T> configClass, @NonNull Context context, @Nullable AttributeSet attributeSet, @NonNull Parser<T> parser) throws IllegalArgumentException {
+        Object config;
+        Resources.Theme theme;
+        if (attributeSet == null) {
+            return parser.parse(context, attributeSet);
+        }
+        synchronized (LOOKUP_KEY) {
+            LOOKUP_KEY.set(configClass, attributeSet, context.getResources().getConfiguration(), context.getTheme());
+            config = CONFIG_CACHE.get(LOOKUP_KEY);
+            LOOKUP_KEY.clear();
+        }
+        if (config == null) {
+            config = parser.parse(context, attributeSet);
+            // NOTE that the resource configuration and the theme are copied since they are updated
+            // in place
+            theme = context.getResources().newTheme();
+            theme.setTo(context.getTheme());
+            CONFIG_CACHE.put(new Key(configClass, attributeSet, new Configuration(context.getResources().getConfiguration()), theme), config);
+        }
+        return (T) config;
+    }
+
+    /**
+     * Evicts all the cached configurations (e.g. to measure the inflations with a cold cache).
+     */
+    @VisibleForTesting
+    static void clear() {
+        CONFIG_CACHE.evictAll();
+    }
+
+    /**
+     * A parser of a configuration.
+     *
+     * @param <T> the type of the configuration
+     */
+    public interface Parser<T> {
+        /**
+         * Parses (and validates) a configuration.
+         *
+         * @param context      the context the preference is running in
+         * @param attributeSet the attributes of the XML tag that is inflating the preference,
+         *                     which may be null
+         *
+         * @return a configuration
+         *
+         * @throws IllegalArgumentException
+         * @noinspection JavadocDeclaration, RedundantSuppression
+         */
+        @NonNull
+        T parse(@NonNull Context context, @Nullable AttributeSet attributeSet) throws IllegalArgumentException;
+    }
+
+    /**
+     * This class is a key of a cached configuration, which either refers to an attribute set (when
+     * looking up a configuration) or holds a copy of its raw XML attributes (when caching one).
+     */
+    private static class Key {
+
+        /**
+         * The hash code of this key.
+         */
+        private int _hashCode;
+
+        /**
+         * The class of the configuration.
+         */
+        private Class<?> _configClass;
+
+        /**
+         * The style attribute of the XML tag.
+         */
+        private int _styleAttribute;
+
+        /**
+         * The attribute set being looked up or null if this key holds a copy of its attributes.
+         */
+        private AttributeSet _attributeSet;
+
+        /**
+         * The resource ids of the names of the (copied) attributes.
+         */
+        private int[] _nameResources;
+
+        /**
+         * The names of the (copied) attributes, which are only compared when an attribute name
+         * has no resource id.
+         */
+        private String[] _names;
+
+        /**
+         * The raw values of the (copied) attributes.
+         */
+        private String[] _values;
+
+        /**
+         * The resource configuration.
+         */
+        private Configuration _configuration;
+
+        /**
+         * The theme.
+         */
+        private Resources.Theme _theme;
+
+        /**
+         * Creates an empty (lookup) key.
+         */
+        Key() {
+        }
+
+        /**
+         * Creates a key holding a copy of the raw XML attributes of an attribute set.
+         *
+         * @param configClass   the class of the configuration
+         * @param attributeSet  an attribute set
+         * @param configuration the resource configuration
+         * @param theme         the theme
+         */
+        Key(@NonNull Class<?> configClass, @NonNull AttributeSet attributeSet, @NonNull Configuration configuration, @NonNull Resources.Theme theme) {
+            set(configClass, attributeSet, configuration, theme);
+            _nameResources = new int[attributeSet.getAttributeCount()];
+            _names = new String[_nameResources.length];
+            _values = new String[_nameResources.length];
+            for (int i = 0; i < _nameResources.length; i++) {
+                _nameResources[i] = attributeSet.getAttributeNameResource(i);
+                _names[i] = _nameResources[i] == 0 ? attributeSet.getAttributeName(i) : null;
+                _values[i] = attributeSet.getAttributeValue(i);
+            }
+            _attributeSet = null;
+        }
+
+        /**
+         * Makes this key refer to an attribute set (without copying anything).
+         *
+         * @param configClass   the class of the configuration
+         * @param attributeSet  an attribute set
+         * @param configuration the resource configuration
+         * @param theme         the theme
+         */
+        void set(@NonNull Class<?> configClass, @NonNull AttributeSet attributeSet, @NonNull Configuration configuration, @NonNull Resources.Theme theme) {
+            int hashCode = 31 * configClass.hashCode() + attributeSet.getStyleAttribute();
+            _configClass = configClass;
+            _styleAttribute = attributeSet.getStyleAttribute();
+            _attributeSet = attributeSet;
+            _configuration = configuration;
+            _theme = theme;
+            for (int i = 0; i < attributeSet.getAttributeCount(); i++) {
+                hashCode = 31 * (31 * hashCode + attributeSet.getAttributeNameResource(i)) + Objects.hashCode(attributeSet.getAttributeValue(i));
+            }
+            _hashCode = 31 * (31 * hashCode + configuration.hashCode()) + theme.hashCode();
+        }
+
+        /**
+         * Makes this key refer to nothing, i.e. the looked up attribute set, resource
+         * configuration and theme aren't kept alive by this key.
+         */
+        void clear() {
+            _configClass = null;
+            _attributeSet = null;
+            _configuration = null;
+            _theme = null;
+        }
+
+        @Override
+        public int hashCode() {
+            return _hashCode;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object object) {
+            Key key;
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            key = (Key) object;
+            if (_hashCode != key._hashCode || _configClass != key._configClass || _styleAttribute != key._styleAttribute || __getCount() != key.__getCount()) {
+                return false;
+            }
+            for (int i = 0; i < __getCount(); i++) {
+                if (__getNameResource(i) != key.__getNameResource(i) || (__getNameResource(i) == 0 && !Objects.equals(__getName(i), key.__getName(i))) || !Objects.equals(__getValue(i), key.__getValue(i))) {
+                    return false;
+                }
+            }
+            return _configuration.equals(key._configuration) && _theme.equals(key._theme);
+        }
+
+        /**
+         * Returns the number of attributes.
+         *
+         * @return a number of attributes
+         */
+        private int __getCount() {
+            return _attributeSet != null ? _attributeSet.getAttributeCount() : _values.length;
+        }
+
+        /**
+         * Returns the resource id of the name of an attribute.
+         *
+         * @param index an index of an attribute
+         *
+         * @return a resource id or 0 if the name has no resource id
+         */
+        private int __getNameResource(int index) {
+            return _attributeSet != null ? _attributeSet.getAttributeNameResource(index) : _nameResources[index];
+        }
+
+        /**
+         * Returns the name of an attribute.
+         *
+         * @param index an index of an attribute
+         *
+         * @return a name
+         */
+        @Nullable
+        private String __getName(int index) {
+            return _attributeSet != null ? _attributeSet.getAttributeName(index) : _names[index];
+        }
+
+        /**
+         * Returns the raw value of an attribute.
+         *
+         * @param index an index of an attribute
+         *
+         * @return a raw value
+         */
+        @Nullable
+        private String __getValue(int index) {
+            return _attributeSet != null ? _attributeSet.getAttributeValue(index) : _values[index];
+        }
+
+    }
+
+}
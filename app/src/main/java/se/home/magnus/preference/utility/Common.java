@@ -5,6 +5,7 @@ import android.util.DisplayMetrics;
 
 import androidx.annotation.NonNull;
 
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 
 /**
@@ -35,4 +36,31 @@ public class Common {
         return Math.round(source * (context.getResources().getDisplayMetrics().xdpi / DisplayMetrics.DENSITY_DEFAULT));
     }
 
+    /**
+     * Returns a thread factory creating named daemon threads, i.e. the background threads of this
+     * library never keep the process alive.
+     *
+     * @param name the name of the threads
+     *
+     * @return a thread factory
+     */
+    @NonNull
+    public static ThreadFactory newDaemonThreadFactory(@NonNull String name) {
+        return new ThreadFactory() {
+            /**
+             * Creates a named daemon thread.
+             *
+             * @param runnable the runnable run by the thread
+             *
+             * @return a thread
+             */
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+package se.home.magnus.preference.utility;
+
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * This class is a cache of the constant states of (configured) drawables, which are keyed by a
+ * group (e.g. a drawable resource or a corner radius) and by a key within the group (e.g. two
+ * colors or a color and a size, see "getKey"). Each user gets its own (mutated) copy of a cached
+ * drawable (see "newDrawable"), i.e. a drawable is only created (and configured) once per key
+ * instead of once per bind. The cached constant states are cleared when the screen density or the
+ * UI mode (e.g. the night mode) changes, since the drawables are inflated for a density and a UI
+ * mode, i.e. their sizes (in pixels) and their resources (e.g. "drawable-night") depend on them.
+ * The cache is bounded, i.e. a group holds at most "MAXIMUM_GROUP_SIZE" constant states (the oldest
+ * cached one is evicted when a group is full) and the cache holds at most "MAXIMUM_GROUP_COUNT"
+ * groups (all the groups are evicted when a group is added to a full cache).
+ * NOTE that a cache must only be used on the main thread, e.g.
+ * <pre>
+ * private static final DrawableStateCache BACKGROUND_STATE_CACHE = new DrawableStateCache();
+ * </pre>
+ */
+public final class DrawableStateCache {
+
+    /**
+     * The maximum number of cached constant states in a group.
+     */
+    private static final int MAXIMUM_GROUP_SIZE = 16;
+
+    /**
+     * The maximum number of groups.
+     */
+    private static final int MAXIMUM_GROUP_COUNT = 16;
+
+    /**
+     * The screen density (in dots per inch) the cached drawables are created for.
+     */
+    private int _densityDpi;
+
+    /**
+     * The UI mode (see "Configuration.uiMode") the cached drawables are created for.
+     */
+    private int _uiMode;
+
+    /**
+     * The groups of cached constant states keyed by their groups.
+     */
+    private final SparseArray<Group> _stateCache = new SparseArray<>();
+
+    /**
+     * Returns the key of two integers (e.g. a color and a size) within a group.
+     *
+     * @param high an integer stored in the high 32 bits of the key
+     * @param low  an integer stored in the low 32 bits of the key
+     *
+     * @return a key
+     */
+    public static long getKey(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns a new (mutated) drawable of a cached constant state.
+     *
+     * @param resources the resources of the user of the drawable
+     * @param state     a cached constant state
+     *
+     * @return a drawable
+     */
+    @NonNull
+    public static Drawable newDrawable(@NonNull Resources resources, @NonNull Drawable.ConstantState state) {
+        return state.newDrawable(resources).mutate();
+    }
+
+    /**
+     * Returns a cached constant state. NOTE that all the cached constant states are cleared if the
+     * screen density or the UI mode has changed since they were created.
+     *
+     * @param resources the resources of the user of the drawable
+     * @param group     a group
+     * @param key       a key within the group
+     *
+     * @return a constant state or null if it isn't cached
+     */
+    @Nullable
+    public Drawable.ConstantState get(@NonNull Resources resources, int group, long key) {
+        Group groupCache;
+        if (resources.getDisplayMetrics().densityDpi != _densityDpi || resources.getConfiguration().uiMode != _uiMode) {
+            _stateCache.clear();
+            _densityDpi = resources.getDisplayMetrics().densityDpi;
+            _uiMode = resources.getConfiguration().uiMode;
+        }
+        return (groupCache = _stateCache.get(group)) != null ? groupCache._stateArray.get(key) : null;
+    }
+
+    /**
+     * Caches a constant state (created for the screen density and the UI mode of the latest "get"). NOTE that the
+     * oldest cached constant state of the group is evicted if the group is full, and that all the
+     * groups are evicted if the group is added to a full cache.
+     *
+     * @param group a group
+     * @param key   a key within the group
+     * @param state a constant state
+     */
+    public void put(int group, long key, @NonNull Drawable.ConstantState state) {
+        Group groupCache;
+        if ((groupCache = _stateCache.get(group)) == null) {
+            if (_stateCache.size() >= MAXIMUM_GROUP_COUNT) {
+                _stateCache.clear();
+            }
+            _stateCache.put(group, groupCache = new Group());
+        }
+        groupCache.put(key, state);
+    }
+
+    /**
+     * This class is a group of cached constant states, which are evicted in the order they were
+     * cached.
+     */
+    private static final class Group {
+
+        /**
+         * The cached constant states keyed by their keys.
+         */
+        final LongSparseArray<Drawable.ConstantState> _stateArray = new LongSparseArray<>();
+
+        /**
+         * The keys of the cached constant states in the order they were cached, i.e. a ring
+         * buffer starting at the "next index" when it is full.
+         */
+        private final long[] _keyArray = new long[MAXIMUM_GROUP_SIZE];
+
+        /**
+         * The position index in the "key array" of the next cached key.
+         */
+        private int _nextIndex;
+
+        /**
+         * Caches a constant state, and evicts the oldest cached one if this group is full.
+         *
+         * @param key   a key
+         * @param state a constant state
+         */
+        void put(long key, @NonNull Drawable.ConstantState state) {
+            if (_stateArray.indexOfKey(key) < 0) {
+                if (_stateArray.size() >= MAXIMUM_GROUP_SIZE) {
+                    _stateArray.remove(_keyArray[_nextIndex]);
+                }
+                _keyArray[_nextIndex] = key;
+                _nextIndex = (_nextIndex + 1) % MAXIMUM_GROUP_SIZE;
+            }
+            _stateArray.put(key, state);
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+package se.home.magnus.preference.utility;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * This class formats floats with a fixed number of decimals into a reusable char buffer, i.e.
+ * without any allocations per formatted value. The formatted value is found in the buffer from the
+ * "start" position and "length" chars onwards (see e.g. TextView.setText(char[], int, int)). The
+ * zero digit, decimal separator and minus sign of the default format locale are used, and the
+ * output is the same as that of the format string "%.nf" (e.g. 0.145f, which is slightly less than
+ * 0.145, becomes "0.14").
+ */
+public class FixedDecimalFormatter {
+
+    /**
+     * The maximum number of decimals that are formatted without allocations. NOTE that a float
+     * scaled by at most 10 to the power of 12 is exact as a double.
+     */
+    private static final int MAXIMUM_DECIMAL_COUNT = 12;
+
+    /**
+     * The upper limit (exclusive) of a scaled value that is formatted without allocations.
+     */
+    private static final double MAXIMUM_SCALED_VALUE = 1L << 53;
+
+    /**
+     * The number of decimals.
+     */
+    private final int _decimalCount;
+
+    /**
+     * The factor scaling a value so that its decimals become integer digits, i.e. 10 to the power
+     * of the number of decimals.
+     */
+    private final double _scale;
+
+    /**
+     * The zero digit of the locale.
+     */
+    private final char _zeroDigit;
+
+    /**
+     * The decimal separator of the locale.
+     */
+    private final char _decimalSeparator;
+
+    /**
+     * The minus sign of the locale.
+     */
+    private final char _minusSign;
+
+    /**
+     * The locale used if a value can't be formatted without allocations.
+     */
+    private final Locale _locale;
+
+    /**
+     * The format string used if a value can't be formatted without allocations.
+     */
+    private final String _format;
+
+    /**
+     * The buffer holding the formatted value, which is filled from its end.
+     */
+    private char[] _buffer;
+
+    /**
+     * The start position of the formatted value in the buffer.
+     */
+    private int _start;
+
+    /**
+     * The number of chars of the formatted value in the buffer.
+     */
+    private int _length;
+
+    /**
+     * @param decimalCount the number of decimals (a negative number is treated as zero)
+     */
+    public FixedDecimalFormatter(int decimalCount) {
+        DecimalFormatSymbols symbols;
+        _locale = Locale.getDefault(Locale.Category.FORMAT);
+        symbols = DecimalFormatSymbols.getInstance(_locale);
+        _decimalCount = Math.max(decimalCount, 0);
+        _scale = Math.pow(10, Math.min(_decimalCount, MAXIMUM_DECIMAL_COUNT));
+        _zeroDigit = symbols.getZeroDigit();
+        _decimalSeparator = symbols.getDecimalSeparator();
+        _minusSign = symbols.getMinusSign();
+        _format = "%." + _decimalCount + "f";
+        // NOTE that the buffer holds a minus sign, the 16 integer digits of the maximum scaled
+        // value, a decimal separator and the decimals
+        _buffer = new char[18 + _decimalCount];
+    }
+
+    /**
+     * Formats a value into the buffer.
+     *
+     * @param value a value
+     */
+    public void format(float value) {
+        int index = _buffer.length;
+        double scaledValue = Math.abs((double) value) * _scale;
+        long digits = (long) scaledValue;
+        if (_decimalCount > MAXIMUM_DECIMAL_COUNT || !(scaledValue < MAXIMUM_SCALED_VALUE)) {
+            // NOTE that this (allocating) fallback handles unrealistic decimal counts, huge
+            // values, infinities and NaN
+            __formatFallback(value);
+            return;
+        }
+        // NOTE that the scaled value is exact, i.e. it is rounded half up on the binary value
+        if (scaledValue - digits >= 0.5) {
+            digits++;
+        }
+        for (int i = 0; i < _decimalCount; i++) {
+            _buffer[--index] = (char) (_zeroDigit + digits % 10);
+            digits /= 10;
+        }
+        if (_decimalCount > 0) {
+            _buffer[--index] = _decimalSeparator;
+        }
+        do {
+            _buffer[--index] = (char) (_zeroDigit + digits % 10);
+            digits /= 10;
+        } while (digits > 0);
+        // NOTE that a negative value rounded to zero keeps its minus sign, as with "%.nf"
+        if (Float.floatToRawIntBits(value) < 0) {
+            _buffer[--index] = _minusSign;
+        }
+        _start = index;
+        _length = _buffer.length - index;
+    }
+
+    /**
+     * Returns the buffer holding the latest formatted value. NOTE that the buffer is overwritten by
+     * the next call of {@link #format}.
+     *
+     * @return the buffer
+     */
+    public char[] getBuffer() {
+        return _buffer;
+    }
+
+    /**
+     * Returns the start position of the latest formatted value in the buffer.
+     *
+     * @return the start position
+     */
+    public int getStart() {
+        return _start;
+    }
+
+    /**
+     * Returns the number of chars of the latest formatted value in the buffer.
+     *
+     * @return the number of chars
+     */
+    public int getLength() {
+        return _length;
+    }
+
+    /**
+     * Formats a value into the buffer by means of the format string, i.e. with allocations.
+     *
+     * @param value a value
+     */
+    private void __formatFallback(float value) {
+        String text = String.format(_locale, _format, value);
+        if (text.length() > _buffer.length) {
+            _buffer = new char[text.length()];
+        }
+        _start = _buffer.length - text.length();
+        _length = text.length();
+        text.getChars(0, text.length(), _buffer, _start);
+    }
+
+}
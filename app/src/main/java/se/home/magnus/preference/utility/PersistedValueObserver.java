@@ -0,0 +1,232 @@
+package se.home.magnus.preference.utility;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceManager;
+
+/**
+ * This class keeps the (cached) value of a preference of this library current when its persisted
+ * value is changed by someone else than the preference (e.g. when the shared preferences are
+ * edited directly), i.e. the preference calls "onAttachedToHierarchy", "onAttached" and
+ * "onDetached" of its observer from its own and refreshes its (cached) value when it is told to
+ * (see "OnRefreshListener"), e.g.
+ * <pre>
+ * private final PersistedValueObserver _persistedValueObserver = new PersistedValueObserver(this, new PersistedValueObserver.OnRefreshListener() {
+ *     public void onRefresh() {
+ *         ...
+ *     }
+ *
+ *     public void onPersist() {
+ *         ...
+ *     }
+ * });
+ * </pre>
+ * NOTE that a preference extending "Preference" directly SHOULD extend "PersistedValuePreference"
+ * instead, which does this wiring. If the shared preferences of the preference are being preloaded when it is attached to a
+ * preference hierarchy (see "PreferencePreloader") the preference neither reads nor writes its
+ * persisted value until they are loaded (see "isLoading"), i.e. it never waits for them to be
+ * loaded from disk on the main thread (and the same applies while the snapshot of a batched
+ * preference data store is being loaded, see "BatchedPreferenceDataStore"). Instead its (cached)
+ * value is refreshed when they are loaded, unless the value has been changed in the meantime, in
+ * which case the (cached) value is persisted when they are loaded (see "onPersisted"). NOTE that
+ * the (cached) value, and hence the getter of the preference, is the default value until they are
+ * loaded (unless it has been changed in the meantime), and that the observer doesn't start
+ * observing the persisted value until they are loaded either (see "onAttached").
+ */
+public class PersistedValueObserver {
+
+    /**
+     * The observed preference.
+     */
+    private final Preference _preference;
+
+    /**
+     * The listener refreshing the (cached) value of the preference.
+     */
+    private final OnRefreshListener _refreshListener;
+
+    /**
+     * The shared preferences the listener is registered on or null if it isn't registered.
+     */
+    private SharedPreferences _sharedPreferences;
+
+    /**
+     * Tells whether or not the shared preferences of the preference are being preloaded.
+     */
+    private boolean _isLoading;
+
+    /**
+     * Tells whether or not the (cached) value has been changed (but not persisted) while the
+     * shared preferences were being preloaded.
+     */
+    private boolean _isPersistPending;
+
+    /**
+     * Tells whether or not the preference is attached to a preference hierarchy.
+     */
+    private boolean _isAttached;
+
+    /**
+     * Listener refreshing the (cached) value of the preference when its persisted value has
+     * changed. NOTE that the shared preferences only keep a weak reference to it.
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener _sharedPreferenceChangeListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+        /**
+         * Called when a shared preference is changed, added, or removed.
+         *
+         * @param sharedPreferences the shared preferences that received the change
+         * @param key               the key of the preference that was changed, added, or removed,
+         *                          or null if the shared preferences are cleared
+         */
+        @Override
+        public void onSharedPreferenceChanged(@NonNull SharedPreferences sharedPreferences, @Nullable String key) {
+            // NOTE that the persisted value can't be read until the shared preferences are loaded
+            if (!_isLoading && (key == null || key.equals(_preference.getKey()))) {
+                _refreshListener.onRefresh();
+            }
+        }
+    };
+
+    /**
+     * Listener refreshing (or persisting) the (cached) value of the preference when the shared
+     * preferences being preloaded are loaded.
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener _loadListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+        /**
+         * Called when the shared preferences are loaded.
+         *
+         * @param sharedPreferences the loaded shared preferences
+         * @param key               null, i.e. all the values may have changed
+         */
+        @Override
+        public void onSharedPreferenceChanged(@NonNull SharedPreferences sharedPreferences, @Nullable String key) {
+            if (_isLoading) {
+                _isLoading = false;
+                // NOTE that the loaded shared preferences are the ones of the preference (unless
+                // it uses a preference data store), i.e. they aren't looked up again
+                if (_isAttached && _preference.getPreferenceDataStore() == null) {
+                    __register(sharedPreferences);
+                }
+                if (_isPersistPending) {
+                    _isPersistPending = false;
+                    _refreshListener.onPersist();
+                } else {
+                    _refreshListener.onRefresh();
+                }
+            }
+        }
+    };
+
+    /**
+     * @param preference      a preference
+     * @param refreshListener a listener refreshing the (cached) value of the preference
+     */
+    public PersistedValueObserver(@NonNull Preference preference, @NonNull OnRefreshListener refreshListener) {
+        _preference = preference;
+        _refreshListener = refreshListener;
+    }
+
+    /**
+     * Checks whether or not the shared preferences of the preference are being preloaded, which
+     * MUST be called when the preference is being attached to a preference hierarchy before the
+     * superclass reads the initial value (i.e. before "super.onAttachedToHierarchy").
+     *
+     * @param preferenceManager the preference manager of the hierarchy
+     */
+    public void onAttachedToHierarchy(@NonNull PreferenceManager preferenceManager) {
+        if (!_isLoading && (_isLoading = PreferencePreloader.isLoading(_preference, preferenceManager))) {
+            PreferencePreloader.notifyWhenLoaded(_preference, preferenceManager, _loadListener);
+        }
+    }
+
+    /**
+     * Tells whether or not the shared preferences of the preference are being preloaded, i.e.
+     * whether or not the preference SHOULD NOT read or write its persisted value (see
+     * "Preference.shouldPersist").
+     *
+     * @return true if the shared preferences are being preloaded, otherwise false
+     */
+    public boolean isLoading() {
+        return _isLoading;
+    }
+
+    /**
+     * Records the outcome of a write of the persisted value, i.e. a write skipped while the shared
+     * preferences are being preloaded is made (see "OnRefreshListener.onPersist") when they are
+     * loaded. NOTE that only the writes of values changed by the user (or by the application, e.g.
+     * "setDefaultValue") MUST be recorded, i.e. the initial value MUST NOT be persisted (see
+     * "Preference.onSetInitialValue"), since the pending write would otherwise overwrite the
+     * persisted value with the default value when the shared preferences are loaded.
+     *
+     * @param isPersisted the outcome of the write (see "Preference.persistFloat")
+     *
+     * @return the outcome of the write
+     */
+    public boolean onPersisted(boolean isPersisted) {
+        if (!isPersisted && _isLoading) {
+            _isPersistPending = true;
+        }
+        return isPersisted;
+    }
+
+    /**
+     * Starts observing the persisted value (if it is persisted in shared preferences), which
+     * SHOULD be called when the preference has been attached to a preference hierarchy. NOTE that
+     * if the shared preferences are being preloaded the observing starts when they are loaded,
+     * since looking them up may access the disk.
+     */
+    public void onAttached() {
+        _isAttached = true;
+        if (!_isLoading) {
+            __register(_preference.getSharedPreferences());
+        }
+    }
+
+    /**
+     * Stops observing the persisted value, which SHOULD be called when the preference is being
+     * removed from the preference hierarchy.
+     */
+    public void onDetached() {
+        _isAttached = false;
+        if (_sharedPreferences != null) {
+            _sharedPreferences.unregisterOnSharedPreferenceChangeListener(_sharedPreferenceChangeListener);
+            _sharedPreferences = null;
+        }
+    }
+
+    /**
+     * Starts observing the persisted value in shared preferences unless it is already observed.
+     *
+     * @param sharedPreferences the shared preferences of the preference or null if it doesn't
+     *                          have any
+     */
+    private void __register(@Nullable SharedPreferences sharedPreferences) {
+        if (_sharedPreferences == null && (_sharedPreferences = sharedPreferences) != null) {
+            _sharedPreferences.registerOnSharedPreferenceChangeListener(_sharedPreferenceChangeListener);
+        }
+    }
+
+    /**
+     * An interface implemented by the preferences refreshing (and persisting) their (cached)
+     * values.
+     */
+    public interface OnRefreshListener {
+        /**
+         * Called (on the main thread) when the persisted value of the preference may have
+         * changed, i.e. the (cached) value SHOULD be read again and the row of the preference
+         * rebound if it has changed.
+         */
+        void onRefresh();
+
+        /**
+         * Called (on the main thread) when the shared preferences being preloaded are loaded if
+         * the (cached) value was changed while they were loaded, i.e. the (cached) value SHOULD be
+         * persisted.
+         */
+        void onPersist();
+    }
+
+}
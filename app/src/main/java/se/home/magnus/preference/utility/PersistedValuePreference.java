@@ -0,0 +1,194 @@
+package se.home.magnus.preference.utility;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceManager;
+
+import java.util.Set;
+
+/**
+ * This class is the base of the preferences of this library which cache their values and extend
+ * "Preference" directly, i.e. it wires their persisted value observer (see
+ * "PersistedValueObserver") into the preference life cycle and into every write of the persisted
+ * value, and a subclass only refreshes (see "onRefresh") and persists (see "onPersist") its
+ * (cached) value. NOTE that while the shared preferences are being preloaded (see
+ * "PreferencePreloader") the preference neither reads nor writes its persisted value (see
+ * "shouldPersist"), i.e. its (cached) value is initialized to its default and a changed value is
+ * persisted when they are loaded.
+ */
+public abstract class PersistedValuePreference extends Preference {
+
+    /**
+     * The observer keeping the (cached) value current when it is changed by someone else than this
+     * preference (e.g. when the shared preferences are edited directly).
+     */
+    private final PersistedValueObserver _persistedValueObserver = new PersistedValueObserver(this, new PersistedValueObserver.OnRefreshListener() {
+        /**
+         * Refreshes the (cached) value.
+         */
+        @Override
+        public void onRefresh() {
+            PersistedValuePreference.this.onRefresh();
+        }
+
+        /**
+         * Persists the (cached) value.
+         */
+        @Override
+        public void onPersist() {
+            PersistedValuePreference.this.onPersist();
+        }
+    });
+
+    /**
+     * @param context      the context this preference is running in, through which it can access
+     *                     the current theme, resources, etc
+     * @param attributeSet the attributes of the XML tag that is inflating this preference, which
+     *                     may be null
+     * @param defStyleAttr an attribute in the current theme that contains a reference to a style
+     *                     resource that supplies default values for the view, which may be 0
+     */
+    protected PersistedValuePreference(@NonNull Context context, @Nullable AttributeSet attributeSet, int defStyleAttr) {
+        super(context, attributeSet, defStyleAttr);
+    }
+
+    /**
+     * Called (on the main thread) when the persisted value may have changed, i.e. the (cached)
+     * value SHOULD be read again and the row of this preference rebound if it has changed (see
+     * "PersistedValueObserver.OnRefreshListener").
+     */
+    protected abstract void onRefresh();
+
+    /**
+     * Called (on the main thread) when the (cached) value, which was changed while the shared
+     * preferences were being preloaded, SHOULD be persisted (see
+     * "PersistedValueObserver.OnRefreshListener").
+     */
+    protected abstract void onPersist();
+
+    /**
+     * Called when this preference is attached to a preference hierarchy, i.e. before the initial
+     * value is read.
+     *
+     * @param preferenceManager the preference manager of the hierarchy
+     */
+    @Override
+    protected void onAttachedToHierarchy(@NonNull PreferenceManager preferenceManager) {
+        _persistedValueObserver.onAttachedToHierarchy(preferenceManager);
+        super.onAttachedToHierarchy(preferenceManager);
+    }
+
+    /**
+     * Tells whether or not this preference reads and writes its persisted value, which it doesn't
+     * while the shared preferences are being preloaded.
+     *
+     * @return true if the value is read and written, otherwise false
+     */
+    @Override
+    protected boolean shouldPersist() {
+        return super.shouldPersist() && !_persistedValueObserver.isLoading();
+    }
+
+    /**
+     * Persists a string value, which is persisted later if the shared preferences are being
+     * preloaded.
+     *
+     * @param value a value
+     *
+     * @return true if the value is persisted, otherwise false
+     */
+    @Override
+    protected boolean persistString(@Nullable String value) {
+        return _persistedValueObserver.onPersisted(super.persistString(value));
+    }
+
+    /**
+     * Persists a string set value, which is persisted later if the shared preferences are being
+     * preloaded.
+     *
+     * @param values a value
+     *
+     * @return true if the value is persisted, otherwise false
+     */
+    @Override
+    public boolean persistStringSet(@Nullable Set<String> values) {
+        return _persistedValueObserver.onPersisted(super.persistStringSet(values));
+    }
+
+    /**
+     * Persists an int value, which is persisted later if the shared preferences are being
+     * preloaded.
+     *
+     * @param value a value
+     *
+     * @return true if the value is persisted, otherwise false
+     */
+    @Override
+    protected boolean persistInt(int value) {
+        return _persistedValueObserver.onPersisted(super.persistInt(value));
+    }
+
+    /**
+     * Persists a long value, which is persisted later if the shared preferences are being
+     * preloaded.
+     *
+     * @param value a value
+     *
+     * @return true if the value is persisted, otherwise false
+     */
+    @Override
+    protected boolean persistLong(long value) {
+        return _persistedValueObserver.onPersisted(super.persistLong(value));
+    }
+
+    /**
+     * Persists a float value, which is persisted later if the shared preferences are being
+     * preloaded.
+     *
+     * @param value a value
+     *
+     * @return true if the value is persisted, otherwise false
+     */
+    @Override
+    protected boolean persistFloat(float value) {
+        return _persistedValueObserver.onPersisted(super.persistFloat(value));
+    }
+
+    /**
+     * Persists a boolean value, which is persisted later if the shared preferences are being
+     * preloaded.
+     *
+     * @param value a value
+     *
+     * @return true if the value is persisted, otherwise false
+     */
+    @Override
+    protected boolean persistBoolean(boolean value) {
+        return _persistedValueObserver.onPersisted(super.persistBoolean(value));
+    }
+
+    /**
+     * Called when this preference has been attached to a preference hierarchy, i.e. the (cached)
+     * value starts listening on changes of the shared preferences (if used).
+     */
+    @Override
+    public void onAttached() {
+        super.onAttached();
+        _persistedValueObserver.onAttached();
+    }
+
+    /**
+     * Called when this preference is being removed from the hierarchy, i.e. the (cached) value
+     * stops listening on changes of the shared preferences.
+     */
+    @Override
+    public void onDetached() {
+        super.onDetached();
+        _persistedValueObserver.onDetached();
+    }
+
+}
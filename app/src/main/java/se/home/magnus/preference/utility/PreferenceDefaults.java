@@ -0,0 +1,104 @@
+package se.home.magnus.preference.utility;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceGroup;
+import androidx.preference.PreferenceManager;
+
+/**
+ * This class resets the preferences of this library to their default values in batches, i.e. all
+ * the default values of a preference group (e.g. a preference screen) are written in one edit of
+ * the shared preferences (instead of one edit, and one disk write, per preference).
+ */
+public class PreferenceDefaults {
+
+    /**
+     * Resets all the preferences of this library in a preference group (and in its nested
+     * preference groups) to their default values. The default values are written in one edit of
+     * the shared preferences of the preference group, or to the preference data store of each
+     * preference if one is used, and the rows of the preferences are rebound (in one layout pass).
+     * NOTE that if the shared preferences are being preloaded (see "PreferencePreloader") the
+     * reset is deferred until they are loaded (on the main thread), since editing them would wait
+     * for them to be loaded from disk.
+     *
+     * @param preferenceGroup a preference group
+     */
+    public static void resetAll(@NonNull PreferenceGroup preferenceGroup) {
+        PreferenceManager preferenceManager = preferenceGroup.getPreferenceManager();
+        SharedPreferences sharedPreferences;
+        SharedPreferences.Editor editor;
+        if (preferenceManager != null && PreferencePreloader.isLoading(preferenceManager)) {
+            PreferencePreloader.notifyWhenLoaded(preferenceManager, new SharedPreferences.OnSharedPreferenceChangeListener() {
+                /**
+                 * Resets the preferences when the shared preferences are loaded.
+                 *
+                 * @param sharedPreferences the loaded shared preferences
+                 * @param key               null, i.e. all the values may have changed
+                 */
+                @Override
+                public void onSharedPreferenceChanged(@NonNull SharedPreferences sharedPreferences, @Nullable String key) {
+                    resetAll(preferenceGroup);
+                }
+            });
+            return;
+        }
+        sharedPreferences = preferenceGroup.getSharedPreferences();
+        editor = sharedPreferences != null ? sharedPreferences.edit() : null;
+        __resetAll(preferenceGroup, editor);
+        if (editor != null) {
+            editor.apply();
+        }
+    }
+
+    /**
+     * Tells whether or not the value of a preference is written to an editor of the shared
+     * preferences, i.e. whether or not the preference is persisted in the shared preferences (and
+     * not in a preference data store).
+     *
+     * @param preference a preference
+     * @param editor     an editor of the shared preferences or null if there isn't any editor
+     *
+     * @return true if the value is written to the editor, otherwise false
+     */
+    public static boolean isEdited(@NonNull Preference preference, @Nullable SharedPreferences.Editor editor) {
+        return editor != null && preference.isPersistent() && preference.hasKey() && preference.getSharedPreferences() != null;
+    }
+
+    /**
+     * Resets all the preferences of this library in a preference group (and in its nested
+     * preference groups) to their default values.
+     *
+     * @param preferenceGroup a preference group
+     * @param editor          an editor of the shared preferences or null if there isn't any editor
+     */
+    private static void __resetAll(@NonNull PreferenceGroup preferenceGroup, @Nullable SharedPreferences.Editor editor) {
+        Preference preference;
+        for (int i = 0; i < preferenceGroup.getPreferenceCount(); i++) {
+            preference = preferenceGroup.getPreference(i);
+            if (preference instanceof Resettable) {
+                ((Resettable) preference).resetDefault(editor);
+            } else if (preference instanceof PreferenceGroup) {
+                __resetAll((PreferenceGroup) preference, editor);
+            }
+        }
+    }
+
+    /**
+     * An interface implemented by the preferences of this library which can be reset to their
+     * default values in batches.
+     */
+    public interface Resettable {
+        /**
+         * Resets this preference to its default value and rebinds its row. NOTE that the default
+         * value is written to the editor (which is applied by the caller) if the preference is
+         * persisted in the shared preferences (see "isEdited"), otherwise it is persisted as usual.
+         *
+         * @param editor an editor of the shared preferences or null if there isn't any editor
+         */
+        void resetDefault(@Nullable SharedPreferences.Editor editor);
+    }
+
+}
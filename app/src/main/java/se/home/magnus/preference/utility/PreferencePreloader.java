@@ -0,0 +1,241 @@
+package se.home.magnus.preference.utility;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceDataStore;
+import androidx.preference.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import se.home.magnus.preference.store.BatchedPreferenceDataStore;
+
+/**
+ * This class preloads (warms up) shared preferences on a background thread, i.e. the XML file of
+ * the shared preferences is loaded (and parsed) off the main thread, e.g. when the application is
+ * started, instead of when the first preference of a preference screen reads its value, e.g.
+ * <pre>
+ * PreferencePreloader.preload(getApplicationContext());
+ * </pre>
+ * The preferences of this library attached to a preference hierarchy while their shared
+ * preferences are being preloaded neither read nor write the shared preferences, instead they show
+ * their default values until the shared preferences are loaded (i.e. also their getters return
+ * their default values) and are then refreshed, and a value changed (e.g. by a click) in the
+ * meantime is persisted when they are loaded (see "PersistedValueObserver"), i.e. they never wait
+ * for the shared preferences to be loaded from disk on the main thread. The same applies to the
+ * preferences persisted in a batched preference data store while its snapshot is being loaded (see
+ * "BatchedPreferenceDataStore"). NOTE that the preferences persisted in any other preference data
+ * store are never affected, and that resetting preferences to their default values (see
+ * "PreferenceDefaults.resetAll") is deferred until the shared preferences are loaded.
+ */
+public class PreferencePreloader {
+
+    /**
+     * The lock guarding the preloaded shared preferences.
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * The (single) background thread on which the shared preferences are loaded.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(Common.newDaemonThreadFactory("PreferencePreloader"));
+
+    /**
+     * The handler notifying the listeners on the main thread.
+     */
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * The listeners to notify when the shared preferences being loaded are loaded keyed by the
+     * names of the shared preferences.
+     */
+    private static final Map<String, List<SharedPreferences.OnSharedPreferenceChangeListener>> PENDING_MAP = new HashMap<>();
+
+    /**
+     * The loaded shared preferences keyed by their names.
+     */
+    private static final Map<String, SharedPreferences> LOADED_MAP = new HashMap<>();
+
+    /**
+     * Preloads the default shared preferences (see "PreferenceManager.getDefaultSharedPreferences")
+     * on a background thread unless they are already loaded or being loaded.
+     *
+     * @param context a context, preferably the application context
+     */
+    public static void preload(@NonNull Context context) {
+        preload(context, PreferenceManager.getDefaultSharedPreferencesName(context));
+    }
+
+    /**
+     * Preloads the shared preferences of a name on a background thread unless they are already
+     * loaded or being loaded.
+     *
+     * @param context a context, preferably the application context
+     * @param name    the name of the shared preferences
+     */
+    public static void preload(@NonNull Context context, @NonNull String name) {
+        Context applicationContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        synchronized (LOCK) {
+            if (PENDING_MAP.containsKey(name) || LOADED_MAP.containsKey(name)) {
+                return;
+            }
+            PENDING_MAP.put(name, new ArrayList<>());
+        }
+        EXECUTOR.execute(new Runnable() {
+            /**
+             * Loads the shared preferences and notifies the listeners waiting for them.
+             */
+            @Override
+            public void run() {
+                SharedPreferences sharedPreferences = applicationContext.getSharedPreferences(name, Context.MODE_PRIVATE);
+                List<SharedPreferences.OnSharedPreferenceChangeListener> listeners;
+                // NOTE that reading any value waits until the whole file is loaded
+                sharedPreferences.getAll();
+                synchronized (LOCK) {
+                    listeners = PENDING_MAP.remove(name);
+                    LOADED_MAP.put(name, sharedPreferences);
+                }
+                if (listeners != null) {
+                    for (SharedPreferences.OnSharedPreferenceChangeListener listener : listeners) {
+                        __notify(sharedPreferences, listener);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Tells whether or not the shared preferences of a preference being attached to a preference
+     * hierarchy are being preloaded (or the snapshot of its batched preference data store is being
+     * loaded), i.e. whether or not reading the (initial) value of the preference would wait for
+     * the shared preferences to be loaded from disk (or would return the default value).
+     *
+     * @param preference        a preference
+     * @param preferenceManager the preference manager of the hierarchy
+     *
+     * @return true if the shared preferences are being preloaded, otherwise false
+     */
+    public static boolean isLoading(@NonNull Preference preference, @NonNull PreferenceManager preferenceManager) {
+        PreferenceDataStore dataStore;
+        if (!preference.isPersistent() || !preference.hasKey()) {
+            return false;
+        }
+        if ((dataStore = __getPreferenceDataStore(preference, preferenceManager)) != null) {
+            return dataStore instanceof BatchedPreferenceDataStore && ((BatchedPreferenceDataStore) dataStore).isLoading();
+        }
+        return isLoading(preferenceManager);
+    }
+
+    /**
+     * Tells whether or not the shared preferences of a preference manager are being preloaded,
+     * i.e. whether or not looking up (or editing) them would wait for them to be loaded from disk.
+     *
+     * @param preferenceManager a preference manager
+     *
+     * @return true if the shared preferences are being preloaded, otherwise false
+     */
+    public static boolean isLoading(@NonNull PreferenceManager preferenceManager) {
+        if (preferenceManager.getPreferenceDataStore() != null || preferenceManager.isStorageDeviceProtected() || preferenceManager.getSharedPreferencesName() == null) {
+            return false;
+        }
+        synchronized (LOCK) {
+            return PENDING_MAP.containsKey(preferenceManager.getSharedPreferencesName());
+        }
+    }
+
+    /**
+     * Notifies a listener (on the main thread, with a null key) when the shared preferences of a
+     * preference (see "isLoading") are loaded, or as soon as possible if they are already loaded.
+     *
+     * @param preference        a preference
+     * @param preferenceManager the preference manager of the hierarchy of the preference
+     * @param listener          a listener refreshing the (cached) value of the preference
+     */
+    public static void notifyWhenLoaded(@NonNull Preference preference, @NonNull PreferenceManager preferenceManager, @NonNull SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        PreferenceDataStore dataStore;
+        if ((dataStore = __getPreferenceDataStore(preference, preferenceManager)) == null) {
+            notifyWhenLoaded(preferenceManager, listener);
+        } else if (dataStore instanceof BatchedPreferenceDataStore) {
+            ((BatchedPreferenceDataStore) dataStore).notifyWhenLoaded(listener);
+        }
+    }
+
+    /**
+     * Notifies a listener (on the main thread, with a null key) when the shared preferences of a
+     * preference manager are loaded, or as soon as possible if they are already loaded.
+     *
+     * @param preferenceManager a preference manager
+     * @param listener          a listener
+     */
+    public static void notifyWhenLoaded(@NonNull PreferenceManager preferenceManager, @NonNull SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        SharedPreferences sharedPreferences;
+        List<SharedPreferences.OnSharedPreferenceChangeListener> listeners;
+        synchronized (LOCK) {
+            if ((listeners = PENDING_MAP.get(preferenceManager.getSharedPreferencesName())) != null) {
+                listeners.add(listener);
+                return;
+            }
+            sharedPreferences = LOADED_MAP.get(preferenceManager.getSharedPreferencesName());
+        }
+        if (sharedPreferences != null) {
+            __notify(sharedPreferences, listener);
+        }
+    }
+
+    /**
+     * Runs a task on the background thread on which the shared preferences are loaded, i.e. the
+     * shared preferences preloaded after the task is submitted aren't loaded until it has run
+     * (e.g. to keep them being preloaded while a test runs).
+     *
+     * @param task a task
+     */
+    @VisibleForTesting
+    public static void execute(@NonNull Runnable task) {
+        EXECUTOR.execute(task);
+    }
+
+    /**
+     * Returns the preference data store of a preference being attached to a preference hierarchy,
+     * i.e. its own or the one of the preference manager (since the preference manager of the
+     * preference isn't set yet).
+     *
+     * @param preference        a preference
+     * @param preferenceManager the preference manager of the hierarchy
+     *
+     * @return the preference data store or null if the preference uses the shared preferences
+     */
+    @Nullable
+    private static PreferenceDataStore __getPreferenceDataStore(@NonNull Preference preference, @NonNull PreferenceManager preferenceManager) {
+        return preference.getPreferenceDataStore() != null ? preference.getPreferenceDataStore() : preferenceManager.getPreferenceDataStore();
+    }
+
+    /**
+     * Notifies a listener on the main thread that the shared preferences are loaded.
+     *
+     * @param sharedPreferences the loaded shared preferences
+     * @param listener          a listener
+     */
+    private static void __notify(@NonNull SharedPreferences sharedPreferences, @NonNull SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        MAIN_HANDLER.post(new Runnable() {
+            /**
+             * Notifies the listener (with a null key, i.e. all the values may have changed).
+             */
+            @Override
+            public void run() {
+                listener.onSharedPreferenceChanged(sharedPreferences, null);
+            }
+        });
+    }
+
+}
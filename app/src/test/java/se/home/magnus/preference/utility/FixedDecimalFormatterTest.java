@@ -0,0 +1,110 @@
+package se.home.magnus.preference.utility;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * This class tests the fixed decimal formatter, i.e. that its output is the same as that of
+ * "String.format", its use of the locale and that it doesn't allocate anything while formatting the
+ * values of a (simulated) drag.
+ */
+public class FixedDecimalFormatterTest {
+
+    /**
+     * The values compared with "String.format".
+     */
+    private static final float[] VALUES = {0f, -0f, 0.145f, 2.675f, 1.005f, 0.125f, -0.005f, -0.001f, 2.5f, -2.5f, 9.96f, 999.999f, 5242.885f, 98765.43f, 16777216f, 1.0E8f, 1.0E-7f, -123.456f, Float.MIN_VALUE, Float.MAX_VALUE, Float.NaN, Float.NEGATIVE_INFINITY};
+
+    /**
+     * The default format locale before the test.
+     */
+    private Locale _locale;
+
+    /**
+     * Sets a known default format locale.
+     */
+    @Before
+    public void setUp() {
+        _locale = Locale.getDefault(Locale.Category.FORMAT);
+        Locale.setDefault(Locale.Category.FORMAT, Locale.US);
+    }
+
+    /**
+     * Restores the default format locale.
+     */
+    @After
+    public void tearDown() {
+        Locale.setDefault(Locale.Category.FORMAT, _locale);
+    }
+
+    /**
+     * Tests that values are formatted as by "String.format", both by the allocation-free
+     * formatting and by the fallback.
+     */
+    @Test
+    public void testStringFormatEquivalence() {
+        for (int decimalCount = 0; decimalCount <= 14; decimalCount++) {
+            for (float value : VALUES) {
+                assertEquals("value " + value, String.format(Locale.US, "%." + decimalCount + "f", value), __format(decimalCount, value));
+            }
+        }
+        for (int i = -10000; i <= 10000; i++) {
+            assertEquals(String.format(Locale.US, "%.2f", i * 0.005f), __format(2, i * 0.005f));
+        }
+    }
+
+    /**
+     * Tests that the decimal separator and the minus sign of the default format locale are used.
+     */
+    @Test
+    public void testLocale() {
+        Locale.setDefault(Locale.Category.FORMAT, Locale.GERMANY);
+        assertEquals("-1,50", __format(2, -1.5f));
+        assertEquals("1000000,0", __format(1, 1000000f));
+    }
+
+    /**
+     * Tests that formatting the values of a (simulated) drag doesn't allocate anything (if the
+     * allocated bytes of the thread can be measured).
+     */
+    @Test
+    public void testZeroAllocations() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        FixedDecimalFormatter formatter = new FixedDecimalFormatter(2);
+        long allocatedBytes;
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        // NOTE that the formatter (and the measurement) is warmed up before the drag is simulated
+        for (int i = 0; i < 1000; i++) {
+            formatter.format(i / 100f);
+        }
+        ((com.sun.management.ThreadMXBean) threadMXBean).getCurrentThreadAllocatedBytes();
+        allocatedBytes = ((com.sun.management.ThreadMXBean) threadMXBean).getCurrentThreadAllocatedBytes();
+        for (int i = 0; i <= 10000; i++) {
+            formatter.format(-50 + i / 100f);
+        }
+        assertEquals(0, ((com.sun.management.ThreadMXBean) threadMXBean).getCurrentThreadAllocatedBytes() - allocatedBytes);
+    }
+
+    /**
+     * Formats a value.
+     *
+     * @param decimalCount a number of decimals
+     * @param value        a value
+     *
+     * @return the formatted value
+     */
+    private static String __format(int decimalCount, float value) {
+        FixedDecimalFormatter formatter = new FixedDecimalFormatter(decimalCount);
+        formatter.format(value);
+        return new String(formatter.getBuffer(), formatter.getStart(), formatter.getLength());
+    }
+
+}